@@ -1,5 +1,7 @@
 package simpledb.buffer;
 
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 
@@ -10,6 +12,9 @@ import simpledb.log.LogMgr;
  * the number of times the buffer has been pinned,
  * whether its contents have been modified,
  * and if so, the id and lsn of the modifying transaction.
+ * With record locking, several transactions can modify
+ * the buffer at once; they synchronize on the buffer
+ * while they do so, and so does a flush.
  * @author Edward Sciore
  */
 public class Buffer {
@@ -17,16 +22,37 @@ public class Buffer {
    private LogMgr lm;
    private Page contents;
    private BlockId blk = null;
-   private int pins = 0;
+   private AtomicInteger pins = new AtomicInteger();
    private int txnum = -1;
+   private Set<Integer> otherModifiers = new HashSet<>();
    private int lsn = -1;
+   private int firstLSN = -1;
+   private boolean unlogged = false;
+   private boolean loading = false;
+   private boolean prefetched = false;
+   private boolean ringOwned = false;
+   private int index;
 
    public Buffer(FileMgr fm, LogMgr lm) {
+      this(fm, lm, 0);
+   }
+
+   /**
+    * Creates the buffer at the specified position of the buffer pool.
+    * Replacement policies use the position to keep
+    * their per-buffer state in arrays.
+    */
+   Buffer(FileMgr fm, LogMgr lm, int index) {
       this.fm = fm;
       this.lm = lm;
+      this.index = index;
       contents = new Page(fm.blockSize());
    }
    
+   int index() {
+      return index;
+   }
+   
    public Page contents() {
       return contents;
    }
@@ -40,10 +66,24 @@ public class Buffer {
       return blk;
    }
 
+   /**
+    * Marks the buffer as modified by the specified transaction.
+    * A negative LSN denotes a modification that was not logged,
+    * which cannot be redone after a crash.
+    * @param txnum the id of the modifying transaction
+    * @param lsn the LSN of the log record describing the modification, or -1
+    */
    public void setModified(int txnum, int lsn) {
+      if (this.txnum >= 0 && this.txnum != txnum)
+         otherModifiers.add(this.txnum);
       this.txnum = txnum;
-      if (lsn >= 0)
+      if (lsn >= 0) {
+         if (firstLSN < 0)
+            firstLSN = lsn;
          this.lsn = lsn;
+      }
+      else
+         unlogged = true;
    }
 
    /**
@@ -52,13 +92,48 @@ public class Buffer {
     * @return true if the buffer is pinned
     */
    public boolean isPinned() {
-      return pins > 0;
+      return pins.get() > 0;
    }
    
    public int modifyingTx() {
       return txnum;
    }
 
+   /**
+    * Returns true if the specified transaction modified
+    * the buffer since it was last written.
+    * @param txnum the id of the transaction
+    */
+   synchronized boolean isModifiedBy(int txnum) {
+      return this.txnum == txnum || otherModifiers.contains(txnum);
+   }
+
+   /**
+    * Returns the LSN of the most recent log record
+    * describing a modification of the buffer.
+    */
+   int lsn() {
+      return lsn;
+   }
+
+   /**
+    * Returns the LSN of the first log record describing a
+    * modification of the buffer since it was last written,
+    * which is where recovery must start to redo the buffer.
+    * @return that LSN, or -1 if no logged modification is unwritten
+    */
+   int firstLSN() {
+      return (txnum >= 0) ? firstLSN : -1;
+   }
+
+   /**
+    * Returns true if the buffer has modifications
+    * that were not logged since it was last written.
+    */
+   boolean hasUnloggedChanges() {
+      return txnum >= 0 && unlogged;
+   }
+
    /**
     * Reads the contents of the specified block into
     * the contents of the buffer.
@@ -70,17 +145,104 @@ public class Buffer {
       flush();
       blk = b;
       fm.read(blk, contents);
-      pins = 0;
+      pins.set(0);
    }
    
+   /**
+    * Assigns the buffer to the specified block without reading it.
+    * The caller reads the block later by calling {@link #readBlock()},
+    * which allows the read to happen outside the lock of its partition.
+    * If the buffer was dirty, then its previous contents
+    * are first written to disk.
+    * @param b a reference to the data block
+    */
+   void reserveForBlock(BlockId b) {
+      flush();
+      blk = b;
+      pins.set(0);
+   }
+
+   /**
+    * Moves a reserved buffer to the specified block,
+    * keeping the pins of the clients that reserved it.
+    * The caller reads the block later by calling {@link #readBlock()}.
+    * If the buffer was dirty, then its previous contents
+    * are first written to disk.
+    * @param b a reference to the data block
+    */
+   void moveToBlock(BlockId b) {
+      flush();
+      blk = b;
+   }
+
+   /**
+    * Detaches the buffer from its block, so that it
+    * can be reused as if it had never been assigned.
+    * The buffer must be unpinned and clean.
+    */
+   void unassign() {
+      blk = null;
+      prefetched = false;
+      ringOwned = false;
+   }
+
+   /**
+    * Reads the contents of the buffer's block from disk.
+    */
+   void readBlock() {
+      fm.read(blk, contents);
+   }
+
+   /**
+    * Returns true if the buffer's block is still being read from disk.
+    */
+   boolean isLoading() {
+      return loading;
+   }
+
+   void setLoading(boolean loading) {
+      this.loading = loading;
+   }
+
+   /**
+    * Returns true if the buffer's block was read ahead
+    * and has not been pinned since.
+    */
+   boolean isPrefetched() {
+      return prefetched;
+   }
+
+   void setPrefetched(boolean prefetched) {
+      this.prefetched = prefetched;
+   }
+
+   /**
+    * Returns true if the buffer's block was brought into the pool
+    * by a scan using a {@link BufferRing}, and has not been
+    * pinned by anyone else since.
+    */
+   boolean isRingOwned() {
+      return ringOwned;
+   }
+
+   void setRingOwned(boolean ringOwned) {
+      this.ringOwned = ringOwned;
+   }
+
    /**
     * Write the buffer to its disk block if it is dirty.
+    * The log is flushed first, except for temporary blocks,
+    * which are never recovered.
     */
-   void flush() {
+   synchronized void flush() {
       if (txnum >= 0) {
-         lm.flush(lsn);
+         if (!FileMgr.isTemp(blk.fileName()))
+            lm.flush(lsn);
          fm.write(blk, contents);
          txnum = -1;
+         otherModifiers.clear();
+         firstLSN = -1;
+         unlogged = false;
       }
    }
 
@@ -88,13 +250,13 @@ public class Buffer {
     * Increase the buffer's pin count.
     */
    void pin() {
-      pins++;
+      pins.incrementAndGet();
    }
 
    /**
     * Decrease the buffer's pin count.
     */
    void unpin() {
-      pins--;
+      pins.decrementAndGet();
    }
 }
\ No newline at end of file
@@ -1,129 +1,334 @@
 package simpledb.buffer;
 
+import java.io.PrintWriter;
+import java.util.*;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 
 /**
  * Manages the pinning and unpinning of buffers to blocks.
+ * The pool is split into partitions, and each block belongs to
+ * the partition chosen by hashing its id.
+ * Each {@link BufferPartition} has its own lock, so clients that
+ * pin blocks of different partitions do not wait for each other.
+ * Within a partition, the buffer assigned to a block is found through
+ * a hash table, and a {@link ReplacementPolicy} chooses
+ * which unpinned buffer to replace.
  * @author Edward Sciore
  *
  */
 public class BufferMgr {
-   private Buffer[] bufferpool;
-   private int numAvailable;
-   private static final long MAX_TIME = 10000; // 10 seconds
-   
+   private static final int MIN_PARTITION_SIZE = 64;
+   private static final int MAX_RING_SIZE = 16;
+   private FileMgr fm;
+   private LogMgr lm;
+   private BufferPartition[] partitions;
+   private int numbuffs;
+   private int ringsize;
+   private Prefetcher prefetcher = null;
+   private BufferWriter writer = null;
+   private volatile PrintWriter trace = null;
+
    /**
-    * Creates a buffer manager having the specified number 
+    * Creates a buffer manager having the specified number
     * of buffer slots.
     * This constructor depends on a {@link FileMgr} and
     * {@link simpledb.log.LogMgr LogMgr} object.
     * @param numbuffs the number of buffer slots to allocate
     */
    public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs) {
-      bufferpool = new Buffer[numbuffs];
-      numAvailable = numbuffs;
-      for (int i=0; i<numbuffs; i++)
-         bufferpool[i] = new Buffer(fm, lm);
+      this(fm, lm, numbuffs, 0, "lru", 0);
+   }
+
+   /**
+    * Creates a buffer manager that uses the specified replacement
+    * policy, and that may also read ahead of sequential scans.
+    * The number of partitions is chosen automatically.
+    * @param numbuffs the number of buffer slots to allocate
+    * @param prefetchdepth the maximum number of blocks to read ahead, or 0
+    * @param policyname the name of the replacement policy,
+    *        as understood by {@link ReplacementPolicy#create}
+    */
+   public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs, int prefetchdepth, String policyname) {
+      this(fm, lm, numbuffs, prefetchdepth, policyname, 0);
+   }
+
+   /**
+    * Creates a buffer manager having the specified number of partitions.
+    * If the number is 0, the pool gets a partition for every
+    * 64 buffers, up to twice the number of processors;
+    * a small pool therefore has a single partition.
+    * The read-ahead depth is capped at a quarter of the pool,
+    * so prefetching is disabled for very small pools.
+    * @param numbuffs the number of buffer slots to allocate
+    * @param prefetchdepth the maximum number of blocks to read ahead, or 0
+    * @param policyname the name of the replacement policy
+    * @param numpartitions the number of partitions, or 0
+    */
+   public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs, int prefetchdepth,
+                    String policyname, int numpartitions) {
+      this.fm = fm;
+      this.lm = lm;
+      this.numbuffs = numbuffs;
+      ringsize = Math.min(MAX_RING_SIZE, Math.max(2, numbuffs / 8));
+      if (numpartitions <= 0)
+         numpartitions = Math.min(numbuffs / MIN_PARTITION_SIZE,
+                                  2 * Runtime.getRuntime().availableProcessors());
+      numpartitions = Math.max(1, Math.min(numpartitions, numbuffs));
+      partitions = new BufferPartition[numpartitions];
+      for (int p=0; p<numpartitions; p++) {
+         int size = numbuffs / numpartitions + (p < numbuffs % numpartitions ? 1 : 0);
+         Buffer[] buffers = new Buffer[size];
+         for (int i=0; i<size; i++)
+            buffers[i] = new Buffer(fm, lm, i);
+         partitions[p] = new BufferPartition(buffers, policyname);
+      }
+      int maxdepth = Math.min(prefetchdepth, numbuffs / 4);
+      if (maxdepth > 0) {
+         prefetcher = new Prefetcher(this, fm, maxdepth);
+         for (BufferPartition part : partitions)
+            part.setPrefetcher(prefetcher);
+      }
+   }
+
+   /**
+    * Returns the prefetcher of this buffer manager,
+    * whose counters describe how well read-ahead is working.
+    * @return the prefetcher, or null if prefetching is disabled
+    */
+   public Prefetcher prefetcher() {
+      return prefetcher;
+   }
+
+   /**
+    * Starts a background thread that writes dirty, unpinned buffers
+    * to disk, so that replacing a buffer seldom requires a write.
+    * The thread writes at most maxpages buffers every delay milliseconds.
+    * @param delay the number of milliseconds between rounds of writing
+    * @param maxpages the maximum number of buffers written per round
+    */
+   public synchronized void startWriter(long delay, int maxpages) {
+      if (writer == null)
+         writer = new BufferWriter(partitions, lm, delay, maxpages);
+   }
+
+   /**
+    * Returns the background writer of this buffer manager.
+    * @return the writer, or null if it has not been started
+    */
+   public BufferWriter writer() {
+      return writer;
+   }
+
+   /**
+    * Returns a snapshot of the counters of the buffer pool:
+    * hits and misses, clean and dirty replacements, and the pins
+    * that had to wait for a buffer or gave up waiting.
+    * The counters are kept by each partition under its own lock,
+    * so collecting them costs nothing when pinning.
+    * @return the current counters
+    */
+   public BufferStats stats() {
+      BufferStats stats = new BufferStats();
+      for (BufferPartition part : partitions)
+         part.addTo(stats);
+      return stats;
+   }
+
+   /**
+    * Returns the number of buffers assigned to
+    * the blocks of each file.
+    * The map is computed by scanning the pool, so it is
+    * meant for monitoring rather than frequent use.
+    * @return a map from file names to numbers of buffers
+    */
+   public Map<String,Integer> residency() {
+      Map<String,Integer> residency = new TreeMap<>();
+      for (BufferPartition part : partitions)
+         part.addResidency(residency);
+      return residency;
+   }
+
+   /**
+    * Returns the number of buffers in the pool.
+    * @return the size of the buffer pool
+    */
+   public int size() {
+      return numbuffs;
+   }
+
+   /**
+    * Sets the number of buffers in the ring of a large scan.
+    * By default, a ring has an eighth of the pool, up to 16 buffers.
+    * @param ringsize the number of buffers per ring, or 0 to disable rings
+    */
+   public void setRingSize(int ringsize) {
+      this.ringsize = ringsize;
+   }
+
+   /**
+    * Creates a ring of buffers for a large sequential scan.
+    * The scan passes the ring to {@link #pin(BlockId, BufferRing)}.
+    * @return a new ring, or null if rings are disabled
+    */
+   public BufferRing newRing() {
+      return (ringsize > 0) ? new BufferRing(this, ringsize) : null;
+   }
+
+   /**
+    * Returns the number of partitions of the buffer pool.
+    * @return the number of partitions
+    */
+   public int partitions() {
+      return partitions.length;
    }
-   
+
    /**
     * Returns the number of available (i.e. unpinned) buffers.
+    * The partitions are not locked, so the value is only
+    * a snapshot while other clients are pinning buffers.
     * @return the number of available buffers
     */
-   public synchronized int available() {
-      return numAvailable;
+   public int available() {
+      int n = 0;
+      for (BufferPartition part : partitions)
+         n += part.available();
+      return n;
+   }
+
+   /**
+    * Writes the id of every block pinned from now on to the
+    * specified writer, as a line containing the file name and
+    * the block number. The trace can be replayed by
+    * {@link ReplacementPolicyTest} to compare the policies.
+    * @param trace the writer, or null to stop recording
+    */
+   public void recordPins(PrintWriter trace) {
+      this.trace = trace;
    }
-   
+
    /**
-    * Flushes the dirty buffers modified by the specified transaction.
+    * Returns true if the specified block is assigned to a buffer.
+    * @param blk a reference to a disk block
+    * @return true if the block is in the buffer pool
+    */
+   public boolean isResident(BlockId blk) {
+      return partitionFor(blk).isResident(blk);
+   }
+
+   /**
+    * Flushes the dirty buffers modified by the specified transaction,
+    * and then forces the database files to disk.
+    * Files are forced even if this transaction did not write them
+    * here, because its buffers may have been written earlier
+    * when they were replaced.
     * @param txnum the transaction's id number
     */
-   public synchronized void flushAll(int txnum) {
-      for (Buffer buff : bufferpool)
-         if (buff.modifyingTx() == txnum)
-         buff.flush();
+   public void flushAll(int txnum) {
+      for (BufferPartition part : partitions)
+         part.flushAll(txnum);
+      fm.forceAll();
+   }
+
+   /**
+    * Flushes the dirty buffers that the specified transaction
+    * modified without logging, such as newly formatted blocks,
+    * and forces the database files to disk if there were any.
+    * Those modifications could not be redone after a crash,
+    * so a transaction that does not flush all of its buffers
+    * when it commits still flushes these.
+    * @param txnum the transaction's id number
+    */
+   public void flushUnlogged(int txnum) {
+      boolean flushed = false;
+      for (BufferPartition part : partitions)
+         flushed |= part.flushUnlogged(txnum);
+      if (flushed)
+         fm.forceAll();
+   }
+
+   /**
+    * Returns the LSN of the oldest log record describing a
+    * modification that has not been written to disk,
+    * ignoring the buffers of temporary files.
+    * @return that LSN, or Integer.MAX_VALUE if no buffer is dirty
+    */
+   public int oldestDirtyLSN() {
+      int oldest = Integer.MAX_VALUE;
+      for (BufferPartition part : partitions)
+         oldest = Math.min(oldest, part.oldestDirtyLSN());
+      return oldest;
    }
-   
-   
+
+
    /**
     * Unpins the specified data buffer. If its pin count
-    * goes to zero, then notify any waiting threads.
+    * goes to zero, then wake a client waiting for
+    * a buffer of its partition.
     * @param buff the buffer to be unpinned
     */
-   public synchronized void unpin(Buffer buff) {
-      buff.unpin();
-      if (!buff.isPinned()) {
-         numAvailable++;
-         notifyAll();
-      }
+   public void unpin(Buffer buff) {
+      partitionFor(buff.block()).unpin(buff);
    }
-   
+
    /**
     * Pins a buffer to the specified block, potentially
-    * waiting until a buffer becomes available.
-    * If no buffer becomes available within a fixed 
+    * waiting until a buffer of the block's partition becomes available.
+    * If no buffer becomes available within a fixed
     * time period, then a {@link BufferAbortException} is thrown.
     * @param blk a reference to a disk block
     * @return the buffer pinned to that block
     */
-   public synchronized Buffer pin(BlockId blk) {
-      try {
-         long timestamp = System.currentTimeMillis();
-         Buffer buff = tryToPin(blk);
-         while (buff == null && !waitingTooLong(timestamp)) {
-            wait(MAX_TIME);
-            buff = tryToPin(blk);
-         }
-         if (buff == null)
-            throw new BufferAbortException();
-         return buff;
-      }
-      catch(InterruptedException e) {
-         throw new BufferAbortException();
-      }
-   }  
-   
-   private boolean waitingTooLong(long starttime) {
-      return System.currentTimeMillis() - starttime > MAX_TIME;
-   }
-   
-   /**
-    * Tries to pin a buffer to the specified block. 
-    * If there is already a buffer assigned to that block
-    * then that buffer is used;  
-    * otherwise, an unpinned buffer from the pool is chosen.
-    * Returns a null value if there are no available buffers.
+   public Buffer pin(BlockId blk) {
+      return pin(blk, null);
+   }
+
+   /**
+    * Pins a buffer to the specified block on behalf of a scan
+    * that reads through the specified ring.
+    * If the pin brings the block into the pool, the buffer
+    * joins the ring, and the oldest buffer of a full ring is freed.
     * @param blk a reference to a disk block
-    * @return the pinned buffer
-    */
-   private Buffer tryToPin(BlockId blk) {
-      Buffer buff = findExistingBuffer(blk);
-      if (buff == null) {
-         buff = chooseUnpinnedBuffer();
-         if (buff == null)
-            return null;
-         buff.assignToBlock(blk);
-      }
-      if (!buff.isPinned())
-         numAvailable--;
-      buff.pin();
+    * @param ring the ring of the scan, or null to use the pool as usual
+    * @return the buffer pinned to that block
+    */
+   public Buffer pin(BlockId blk, BufferRing ring) {
+      PrintWriter trace = this.trace;
+      if (trace != null)
+         trace.println(blk.fileName() + " " + blk.number());
+      Buffer buff = partitionFor(blk).pin(blk, ring != null);
+      if (ring != null && buff.isRingOwned())
+         ring.add(buff, blk);
       return buff;
    }
-   
-   private Buffer findExistingBuffer(BlockId blk) {
-      for (Buffer buff : bufferpool) {
-         BlockId b = buff.block();
-         if (b != null && b.equals(blk))
-            return buff;
-      }
-      return null;
-   }
-   
-   private Buffer chooseUnpinnedBuffer() {
-      for (Buffer buff : bufferpool)
-         if (!buff.isPinned())
-         return buff;
-      return null;
+
+   /**
+    * Frees a buffer that has dropped out of a scan's ring.
+    * @param buff the buffer
+    * @param blk the block that the scan read into the buffer
+    */
+   void release(Buffer buff, BlockId blk) {
+      partitionFor(blk).release(buff, blk);
+   }
+
+   /**
+    * Reads the specified block into an unpinned buffer,
+    * without pinning it.
+    * The buffer is reserved while holding the partition's lock,
+    * but the disk read happens outside of it;
+    * a client that pins the block during the read waits for it.
+    * The method does nothing if the block is already in a buffer,
+    * or if fewer than half of the partition's buffers are available.
+    * @param blk a reference to a disk block
+    * @param freeOnly true if the block may only be read into
+    *        a free buffer, rather than replace another block
+    * @return true if the block was read
+    */
+   boolean prefetch(BlockId blk, boolean freeOnly) {
+      return partitionFor(blk).prefetch(blk, freeOnly);
+   }
+
+   private BufferPartition partitionFor(BlockId blk) {
+      return partitions[Math.floorMod(blk.hashCode(), partitions.length)];
    }
 }
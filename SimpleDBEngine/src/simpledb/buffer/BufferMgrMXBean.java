@@ -0,0 +1,42 @@
+package simpledb.buffer;
+
+import java.util.Map;
+
+/**
+ * The management interface of a buffer manager,
+ * through which its counters can be watched with JMX tools
+ * such as jconsole.
+ * Each attribute is computed from a fresh {@link BufferStats} snapshot.
+ * @see BufferMgrMonitor
+ */
+public interface BufferMgrMXBean {
+   int getSize();
+   int getAvailable();
+   int getPartitions();
+   long getHits();
+   long getMisses();
+   double getHitRatio();
+   long getCleanEvictions();
+   long getDirtyEvictions();
+   long getPinWaits();
+   long getPinWaitMillis();
+   long[] getPinWaitHistogram();
+   long getAborts();
+   long getBackgroundWrites();
+   long getBackgroundWriteFailures();
+
+   /**
+    * Returns the first failure of the background writer,
+    * or null if it has not failed.
+    */
+   String getFirstBackgroundWriteFailure();
+   long getPrefetchReads();
+   long getPrefetchHits();
+   long getWastedPrefetches();
+   long getPrefetchFailures();
+
+   /**
+    * Returns the number of buffers assigned to the blocks of each file.
+    */
+   Map<String,Integer> getResidency();
+}
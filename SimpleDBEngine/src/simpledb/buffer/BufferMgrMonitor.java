@@ -0,0 +1,121 @@
+package simpledb.buffer;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import javax.management.*;
+
+/**
+ * Exposes the counters of a buffer manager as a JMX MXBean,
+ * registered under the name
+ * <code>simpledb:type=BufferMgr,name=</code><i>database</i>.
+ */
+public class BufferMgrMonitor implements BufferMgrMXBean {
+   private BufferMgr bm;
+
+   private BufferMgrMonitor(BufferMgr bm) {
+      this.bm = bm;
+   }
+
+   /**
+    * Registers an MXBean for the buffer manager of the specified database
+    * with the platform MBean server, replacing any MXBean
+    * registered earlier for a database of the same name.
+    * @param bm the buffer manager
+    * @param dbname the name of the database
+    */
+   public static void register(BufferMgr bm, String dbname) {
+      try {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         ObjectName name = new ObjectName("simpledb:type=BufferMgr,name="
+                                          + ObjectName.quote(dbname));
+         if (server.isRegistered(name))
+            server.unregisterMBean(name);
+         server.registerMBean(new BufferMgrMonitor(bm), name);
+      }
+      catch (JMException e) {
+         throw new RuntimeException("cannot register the buffer manager of " + dbname);
+      }
+   }
+
+   public int getSize() {
+      return bm.size();
+   }
+
+   public int getAvailable() {
+      return bm.available();
+   }
+
+   public int getPartitions() {
+      return bm.partitions();
+   }
+
+   public long getHits() {
+      return bm.stats().hits();
+   }
+
+   public long getMisses() {
+      return bm.stats().misses();
+   }
+
+   public double getHitRatio() {
+      return bm.stats().hitRatio();
+   }
+
+   public long getCleanEvictions() {
+      return bm.stats().cleanEvictions();
+   }
+
+   public long getDirtyEvictions() {
+      return bm.stats().dirtyEvictions();
+   }
+
+   public long getPinWaits() {
+      return bm.stats().pinWaits();
+   }
+
+   public long getPinWaitMillis() {
+      return bm.stats().pinWaitMillis();
+   }
+
+   public long[] getPinWaitHistogram() {
+      return bm.stats().pinWaitHistogram();
+   }
+
+   public long getAborts() {
+      return bm.stats().aborts();
+   }
+
+   public long getBackgroundWrites() {
+      return (bm.writer() == null) ? 0 : bm.writer().writes();
+   }
+
+   public long getBackgroundWriteFailures() {
+      return (bm.writer() == null) ? 0 : bm.writer().failures();
+   }
+
+   public String getFirstBackgroundWriteFailure() {
+      if (bm.writer() == null || bm.writer().firstFailure() == null)
+         return null;
+      return bm.writer().firstFailure().toString();
+   }
+
+   public long getPrefetchReads() {
+      return (bm.prefetcher() == null) ? 0 : bm.prefetcher().issued();
+   }
+
+   public long getPrefetchHits() {
+      return (bm.prefetcher() == null) ? 0 : bm.prefetcher().hits();
+   }
+
+   public long getWastedPrefetches() {
+      return (bm.prefetcher() == null) ? 0 : bm.prefetcher().wasted();
+   }
+
+   public long getPrefetchFailures() {
+      return (bm.prefetcher() == null) ? 0 : bm.prefetcher().failures();
+   }
+
+   public Map<String,Integer> getResidency() {
+      return bm.residency();
+   }
+}
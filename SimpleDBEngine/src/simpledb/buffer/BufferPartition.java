@@ -0,0 +1,491 @@
+package simpledb.buffer;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.*;
+import simpledb.file.*;
+
+/**
+ * One partition of the buffer pool.
+ * The buffer manager assigns each block to a partition by hashing
+ * its id, and the partition has its own buffers, lock,
+ * replacement policy and queue of waiting clients, so that
+ * pins of blocks in different partitions do not contend.
+ * An unpin wakes a single waiting client, which passes the
+ * wake-up on if it leaves an available buffer unused.
+ * A pin that misses reserves a buffer while holding the lock,
+ * and writes the buffer's old block and reads the new one after
+ * releasing it; the clients that pin either block meanwhile wait
+ * for the read.
+ * <p>
+ * The partition counts hits, misses, replacements and waits
+ * in plain fields that are only updated while holding its lock,
+ * so the counting adds no synchronization to pin and unpin.
+ */
+class BufferPartition {
+   private static final long MAX_TIME = 10000; // 10 seconds
+
+   private Buffer[] buffers;
+   private Map<BlockId,Buffer> assigned = new HashMap<>();
+   private Deque<Buffer> free = new ArrayDeque<>();
+   private ReplacementPolicy policy;
+   private Prefetcher prefetcher;
+   private ReentrantLock lock = new ReentrantLock();
+   private Condition changed = lock.newCondition();
+   private volatile int numAvailable;
+   private long hits, misses, evictions, dirtyEvictions;
+   private long waits, waitNanos, aborts;
+   private long[] waitHistogram = new long[BufferStats.WAIT_BUCKETS_MS.length + 1];
+   private int lastPinKind; // how the last call to tryToPin found its block
+
+   BufferPartition(Buffer[] buffers, String policyname) {
+      this.buffers = buffers;
+      numAvailable = buffers.length;
+      free.addAll(Arrays.asList(buffers));
+      policy = ReplacementPolicy.create(policyname, buffers);
+   }
+
+   void setPrefetcher(Prefetcher prefetcher) {
+      this.prefetcher = prefetcher;
+   }
+
+   int available() {
+      return numAvailable;
+   }
+
+   int size() {
+      return buffers.length;
+   }
+
+   /**
+    * Adds the counters of this partition to the snapshot.
+    */
+   void addTo(BufferStats stats) {
+      lock.lock();
+      try {
+         stats.size += buffers.length;
+         stats.available += numAvailable;
+         stats.hits += hits;
+         stats.misses += misses;
+         stats.evictions += evictions;
+         stats.dirtyEvictions += dirtyEvictions;
+         stats.waits += waits;
+         stats.waitNanos += waitNanos;
+         stats.aborts += aborts;
+         for (int i=0; i<waitHistogram.length; i++)
+            stats.waitHistogram[i] += waitHistogram[i];
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Adds the number of buffers assigned to the blocks
+    * of each file to the map.
+    */
+   void addResidency(Map<String,Integer> residency) {
+      lock.lock();
+      try {
+         for (BlockId blk : assigned.keySet())
+            residency.merge(blk.fileName(), 1, Integer::sum);
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   void flushAll(int txnum) {
+      lock.lock();
+      try {
+         for (Buffer buff : buffers)
+            if (buff.isModifiedBy(txnum))
+               buff.flush();
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Flushes the buffers that the specified transaction
+    * modified without logging, except those of temporary files.
+    * @return true if a buffer was flushed
+    */
+   boolean flushUnlogged(int txnum) {
+      lock.lock();
+      try {
+         boolean flushed = false;
+         for (Buffer buff : buffers)
+            if (buff.isModifiedBy(txnum) && buff.hasUnloggedChanges()
+                  && !FileMgr.isTemp(buff.block().fileName())) {
+               buff.flush();
+               flushed = true;
+            }
+         return flushed;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Returns the smallest first LSN of the dirty buffers
+    * of this partition, ignoring temporary files.
+    * @return that LSN, or Integer.MAX_VALUE if there is none
+    */
+   int oldestDirtyLSN() {
+      lock.lock();
+      try {
+         int oldest = Integer.MAX_VALUE;
+         for (Buffer buff : buffers) {
+            int lsn = buff.firstLSN();
+            if (lsn >= 0 && !FileMgr.isTemp(buff.block().fileName()))
+               oldest = Math.min(oldest, lsn);
+         }
+         return oldest;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Adds up to max dirty, unpinned buffers to the list
+    * of candidates for the background writer.
+    * The buffers of temporary files are left to be replaced,
+    * since their contents never need to reach the disk.
+    */
+   void collectDirty(List<BufferWriter.Candidate> candidates, int max) {
+      lock.lock();
+      try {
+         for (int i=0; i<buffers.length && max>0; i++) {
+            Buffer buff = buffers[i];
+            if (!buff.isPinned() && buff.modifyingTx() >= 0
+                  && !FileMgr.isTemp(buff.block().fileName())) {
+               candidates.add(new BufferWriter.Candidate(this, buff, buff.block(), buff.lsn()));
+               max--;
+            }
+         }
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Writes the buffer to disk if it is still unpinned, assigned to
+    * the same block, and has not been modified since it was collected.
+    * The write happens while holding the lock, so that the buffer
+    * cannot be pinned or replaced meanwhile;
+    * the log has already been flushed by the writer.
+    * @return true if the buffer was written
+    */
+   boolean writeIfUnchanged(Buffer buff, BlockId blk, int lsn) {
+      lock.lock();
+      try {
+         if (buff.isPinned() || buff.modifyingTx() < 0
+               || !blk.equals(buff.block()) || buff.lsn() != lsn)
+            return false;
+         buff.flush();
+         return true;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   boolean isResident(BlockId blk) {
+      lock.lock();
+      try {
+         return assigned.containsKey(blk);
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   void unpin(Buffer buff) {
+      lock.lock();
+      try {
+         buff.unpin();
+         if (!buff.isPinned()) {
+            numAvailable++;
+            policy.unpinned(buff);
+            changed.signal();
+         }
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Pins a buffer to the specified block, waiting for a buffer
+    * of this partition to become available if necessary.
+    * @see BufferMgr#pin(BlockId)
+    */
+   Buffer pin(BlockId blk, boolean forRing) {
+      Buffer buff;
+      boolean reserved;
+      int how;
+      lock.lock();
+      try {
+         long timestamp = System.currentTimeMillis();
+         boolean waited = false, waitedForLoad = false;
+         buff = tryToPin(blk, forRing);
+         if (buff == null) {
+            long waitstart = System.nanoTime();
+            while (buff == null && !waitingTooLong(timestamp)) {
+               Buffer loading = assigned.get(blk);
+               if (loading != null && loading.isLoading())
+                  waitedForLoad = true;
+               waited = true;
+               changed.await(MAX_TIME, TimeUnit.MILLISECONDS);
+               buff = tryToPin(blk, forRing);
+            }
+            long waittime = System.nanoTime() - waitstart;
+            waits++;
+            waitNanos += waittime;
+            waitHistogram[BufferStats.bucketFor(waittime)]++;
+         }
+         if (waited && numAvailable > 0)
+            changed.signal();
+         if (buff == null) {
+            aborts++;
+            throw new BufferAbortException();
+         }
+         how = lastPinKind;
+         if (waitedForLoad && how == Prefetcher.PREFETCHED)
+            how = Prefetcher.LOADING;
+         reserved = buff.isLoading();
+      }
+      catch(InterruptedException e) {
+         throw new BufferAbortException();
+      }
+      finally {
+         lock.unlock();
+      }
+      if (prefetcher != null)
+         prefetcher.accessed(blk, how, forRing);
+      if (reserved)
+         load(buff, blk, false);
+      return buff;
+   }
+
+   /**
+    * Reads the specified block into an unpinned buffer,
+    * without pinning it.
+    * @see BufferMgr#prefetch(BlockId, boolean)
+    */
+   boolean prefetch(BlockId blk, boolean freeOnly) {
+      Buffer buff;
+      lock.lock();
+      try {
+         if (assigned.containsKey(blk) || numAvailable <= buffers.length / 2
+               || (freeOnly && free.isEmpty()))
+            return false;
+         buff = chooseUnpinnedBuffer();
+         if (buff == null)
+            return false;
+         reserve(buff, blk);
+         buff.setRingOwned(false);
+      }
+      finally {
+         lock.unlock();
+      }
+      load(buff, blk, true);
+      return true;
+   }
+
+   /**
+    * Returns a buffer that has dropped out of a scan's ring to
+    * the free list, if it is unpinned, still holds the block that
+    * the scan read, and nobody else has pinned that block since.
+    * A dirty buffer is written first if its block is temporary;
+    * otherwise it is left to the replacement policy, since writing
+    * it would require flushing the log while holding the lock.
+    * @see BufferMgr#release(Buffer, BlockId)
+    */
+   void release(Buffer buff, BlockId blk) {
+      lock.lock();
+      try {
+         if (buff.isPinned() || !buff.isRingOwned() || !blk.equals(buff.block()))
+            return;
+         if (buff.modifyingTx() >= 0) {
+            if (!FileMgr.isTemp(blk.fileName()))
+               return;
+            buff.flush();
+         }
+         policy.remove(buff);
+         assigned.remove(blk);
+         buff.unassign();
+         free.addFirst(buff);
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Maps the block to the buffer, pins it, and marks it as loading,
+    * so that the clients that pin the block wait until
+    * {@link #load} has read it.
+    * A buffer that holds a modified block keeps that block
+    * until {@link #load} has written it; the block stays mapped
+    * to the loading buffer, so that nobody reads it from disk
+    * before it is written.
+    */
+   private void reserve(Buffer buff, BlockId blk) {
+      countEviction(buff);
+      if (buff.modifyingTx() < 0) {
+         unassign(buff);
+         buff.reserveForBlock(blk);
+      }
+      assigned.put(blk, buff);
+      buff.setLoading(true);
+      pinBuffer(buff);
+      policy.assigned(buff);
+   }
+
+   /**
+    * Writes the previous block of a reserved buffer if it was
+    * modified, and reads the new block into it, without
+    * holding the lock, so that the pins of other blocks
+    * do not wait for the disk.
+    * A prefetched buffer is then unpinned.
+    * If the disk access fails, the block is unmapped and the
+    * buffer is unpinned; a buffer that was read into
+    * goes back to the free list.
+    */
+   private void load(Buffer buff, BlockId blk, boolean prefetch) {
+      boolean loaded = false;
+      try {
+         BlockId old = buff.block();
+         if (!blk.equals(old)) {
+            buff.flush();
+            lock.lock();
+            try {
+               assigned.remove(old, buff);
+               buff.moveToBlock(blk);
+               changed.signalAll(); // the old block can be read again
+            }
+            finally {
+               lock.unlock();
+            }
+         }
+         buff.readBlock();
+         loaded = true;
+      }
+      finally {
+         lock.lock();
+         try {
+            buff.setLoading(false);
+            if (loaded) {
+               buff.setPrefetched(prefetch);
+               if (prefetch)
+                  unpin(buff);
+            }
+            else {
+               assigned.remove(blk, buff);
+               unpin(buff);
+               if (blk.equals(buff.block())) {
+                  policy.remove(buff);
+                  buff.unassign();
+                  free.addFirst(buff);
+               }
+            }
+            changed.signalAll(); // wake the clients waiting for the read
+         }
+         finally {
+            lock.unlock();
+         }
+      }
+   }
+
+   private boolean waitingTooLong(long starttime) {
+      return System.currentTimeMillis() - starttime > MAX_TIME;
+   }
+
+   /**
+    * Tries to pin a buffer to the specified block.
+    * If the block is not in the pool, a buffer is reserved for it,
+    * which the caller loads after releasing the lock;
+    * a block that another client is loading is not pinned.
+    * If the pin is made for a scan's ring and brings the block into
+    * the pool, the buffer is marked as owned by the ring;
+    * any other pin of the block clears the mark.
+    * A pin for a ring that finds its block already in the pool is
+    * not reported to the replacement policy, so that the blocks
+    * touched by a large scan do not look recently used.
+    */
+   private Buffer tryToPin(BlockId blk, boolean forRing) {
+      Buffer buff = assigned.get(blk);
+      if (buff == null) {
+         buff = chooseUnpinnedBuffer();
+         if (buff == null)
+            return null;
+         reserve(buff, blk);
+         buff.setRingOwned(forRing);
+         misses++;
+         lastPinKind = Prefetcher.READ;
+         return buff;
+      }
+      else if (buff.isLoading())
+         return null;
+      else if (buff.isPrefetched()) {
+         buff.setPrefetched(false);
+         buff.setRingOwned(forRing);
+         lastPinKind = Prefetcher.PREFETCHED;
+      }
+      else {
+         buff.setRingOwned(false);
+         lastPinKind = Prefetcher.RESIDENT;
+      }
+      pinBuffer(buff);
+      hits++;
+      if (!forRing)
+         policy.accessed(buff);
+      return buff;
+   }
+
+   private void pinBuffer(Buffer buff) {
+      if (!buff.isPinned()) {
+         numAvailable--;
+         policy.pinned(buff);
+      }
+      buff.pin();
+   }
+
+   /**
+    * Returns a buffer that has never been assigned a block if there
+    * is one, and otherwise the victim chosen by the replacement policy.
+    */
+   private Buffer chooseUnpinnedBuffer() {
+      if (!free.isEmpty())
+         return free.poll();
+      if (numAvailable == 0)
+         return null;
+      Buffer buff = policy.chooseVictim();
+      if (buff == null)
+         return null;
+      if (buff.isPrefetched()) {
+         buff.setPrefetched(false);
+         prefetcher.evictedUnused(buff.block());
+      }
+      return buff;
+   }
+
+   private void countEviction(Buffer buff) {
+      if (buff.block() != null) {
+         evictions++;
+         if (buff.modifyingTx() >= 0)
+            dirtyEvictions++;
+      }
+   }
+
+   private void unassign(Buffer buff) {
+      if (buff.block() != null)
+         assigned.remove(buff.block());
+   }
+}
@@ -0,0 +1,51 @@
+package simpledb.buffer;
+
+import java.util.Random;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+
+/**
+ * Measures the latency of pin and unpin for several buffer pool sizes.
+ * A hit pins a block that is already in the pool;
+ * a miss pins a block that must replace another one.
+ * The blocks lie beyond the end of the file, so a miss
+ * does not spend any time reading the disk.
+ * Usage: BufferPinBenchmark [poolsize ...]
+ */
+public class BufferPinBenchmark {
+   private static final int OPS = 100000;
+
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("bufferpinbenchmark", 400, 8);
+      FileMgr fm = db.fileMgr();
+      LogMgr lm = db.logMgr();
+      System.out.println("   pool size    hit ns/pin   miss ns/pin");
+      int[] sizes = {8, 1000, 100000};
+      if (args.length > 0) {
+         sizes = new int[args.length];
+         for (int i=0; i<args.length; i++)
+            sizes[i] = Integer.parseInt(args[i]);
+      }
+      for (int size : sizes) {
+         BufferMgr bm = new BufferMgr(fm, lm, size);
+         // fill the pool
+         for (int i=0; i<size; i++)
+            bm.unpin(bm.pin(new BlockId("benchfile", i)));
+         Random rand = new Random(size);
+         int next = size;
+         double hit = 0, miss = 0;
+         for (int round=0; round<2; round++) {  // the first round warms up
+            long start = System.nanoTime();
+            for (int i=0; i<OPS; i++)
+               bm.unpin(bm.pin(new BlockId("benchfile", rand.nextInt(size))));
+            hit = (System.nanoTime() - start) / (double) OPS;
+            start = System.nanoTime();
+            for (int i=0; i<OPS; i++)
+               bm.unpin(bm.pin(new BlockId("benchfile", next++)));
+            miss = (System.nanoTime() - start) / (double) OPS;
+         }
+         System.out.format("%12d %13.0f %13.0f%n", size, hit, miss);
+      }
+   }
+}
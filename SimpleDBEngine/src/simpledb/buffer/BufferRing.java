@@ -0,0 +1,44 @@
+package simpledb.buffer;
+
+import simpledb.file.BlockId;
+
+/**
+ * A small ring of buffers used by a large sequential scan,
+ * so that the scan does not push the working set of other
+ * transactions out of the buffer pool.
+ * The ring remembers the last few buffers that the scan brought
+ * into the pool. When the ring is full, the oldest buffer is
+ * returned to its partition as a free buffer, unless someone else
+ * has pinned its block in the meantime; the next block read by
+ * the scan (or by anyone) then uses that buffer
+ * instead of replacing a buffer of the working set.
+ * <p>
+ * A ring is obtained from {@link BufferMgr#newRing()}
+ * and is used by a single scan.
+ */
+public class BufferRing {
+   private BufferMgr bm;
+   private Buffer[] buffers;
+   private BlockId[] blocks;
+   private int next = 0;
+
+   BufferRing(BufferMgr bm, int size) {
+      this.bm = bm;
+      buffers = new Buffer[size];
+      blocks = new BlockId[size];
+   }
+
+   /**
+    * Adds the buffer that the scan just brought into the pool,
+    * releasing the oldest buffer of the ring if the ring is full.
+    * @param buff the buffer
+    * @param blk the block assigned to the buffer
+    */
+   void add(Buffer buff, BlockId blk) {
+      if (buffers[next] != null)
+         bm.release(buffers[next], blocks[next]);
+      buffers[next] = buff;
+      blocks[next] = blk;
+      next = (next + 1) % buffers.length;
+   }
+}
@@ -0,0 +1,112 @@
+package simpledb.buffer;
+
+/**
+ * A snapshot of the counters of a buffer manager,
+ * as returned by {@link BufferMgr#stats()}.
+ * The counters of each partition are read while holding
+ * its lock, but the partitions are read one after another,
+ * so the totals are not an atomic view of a busy pool.
+ */
+public class BufferStats {
+   /**
+    * The upper bounds, in milliseconds, of the buckets of the
+    * pin wait histogram. The last bucket holds the longer waits.
+    */
+   public static final long[] WAIT_BUCKETS_MS = {1, 10, 100, 1000, 10000};
+
+   int size, available;
+   long hits, misses, evictions, dirtyEvictions, waits, waitNanos, aborts;
+   long[] waitHistogram = new long[WAIT_BUCKETS_MS.length + 1];
+
+   BufferStats() {}
+
+   /**
+    * Returns the index of the histogram bucket for the specified wait.
+    */
+   static int bucketFor(long waitNanos) {
+      long millis = waitNanos / 1000000;
+      int i = 0;
+      while (i < WAIT_BUCKETS_MS.length && millis >= WAIT_BUCKETS_MS[i])
+         i++;
+      return i;
+   }
+
+   public int size() {
+      return size;
+   }
+
+   public int available() {
+      return available;
+   }
+
+   /**
+    * Returns the number of pins that found their block in the pool,
+    * including blocks that had been read ahead.
+    */
+   public long hits() {
+      return hits;
+   }
+
+   /**
+    * Returns the number of pins that had to read their block.
+    */
+   public long misses() {
+      return misses;
+   }
+
+   public double hitRatio() {
+      long pins = hits + misses;
+      return (pins == 0) ? 0 : (double) hits / pins;
+   }
+
+   /**
+    * Returns the number of times a buffer was reassigned from one
+    * block to another without having to write its contents.
+    */
+   public long cleanEvictions() {
+      return evictions - dirtyEvictions;
+   }
+
+   /**
+    * Returns the number of replacements that had to write
+    * the buffer's modified contents before reading the new block.
+    */
+   public long dirtyEvictions() {
+      return dirtyEvictions;
+   }
+
+   /**
+    * Returns the number of pins that had to wait for a buffer,
+    * or for a block being read ahead.
+    */
+   public long pinWaits() {
+      return waits;
+   }
+
+   public long pinWaitMillis() {
+      return waitNanos / 1000000;
+   }
+
+   /**
+    * Returns the number of waiting pins in each bucket
+    * of {@link #WAIT_BUCKETS_MS}.
+    */
+   public long[] pinWaitHistogram() {
+      return waitHistogram.clone();
+   }
+
+   /**
+    * Returns the number of pins that gave up waiting
+    * and threw a {@link BufferAbortException}.
+    */
+   public long aborts() {
+      return aborts;
+   }
+
+   public String toString() {
+      return String.format("%d buffers, %d available; %d hits, %d misses (%.1f%%); "
+            + "%d clean and %d dirty evictions; %d waits (%d ms), %d aborts",
+            size, available, hits, misses, 100 * hitRatio(),
+            cleanEvictions(), dirtyEvictions, waits, pinWaitMillis(), aborts);
+   }
+}
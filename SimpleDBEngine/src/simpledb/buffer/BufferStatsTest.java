@@ -0,0 +1,36 @@
+package simpledb.buffer;
+
+import java.lang.management.ManagementFactory;
+import javax.management.*;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+
+public class BufferStatsTest {
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("bufferstatstest", 400, 3);
+      BufferMgr bm = db.bufferMgr();
+      Buffer[] buff = new Buffer[4];
+      buff[0] = bm.pin(new BlockId("testfile", 0));
+      buff[1] = bm.pin(new BlockId("testfile", 1));
+      buff[2] = bm.pin(new BlockId("testfile", 2));
+      bm.unpin(buff[1]);
+      buff[1] = bm.pin(new BlockId("testfile", 1)); // a hit
+      buff[3] = bm.pin(new BlockId("testfile", 0)); // another hit
+      try {
+         bm.pin(new BlockId("testfile", 3)); // waits, then aborts
+      }
+      catch(BufferAbortException e) {
+         System.out.println("Exception: No available buffers");
+      }
+      bm.unpin(buff[2]);
+      bm.pin(new BlockId("othertest", 0)); // a clean eviction
+
+      System.out.println(bm.stats());
+      System.out.println("residency: " + bm.residency());
+
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName("simpledb:type=BufferMgr,name=\"bufferstatstest\"");
+      System.out.println("hit ratio through JMX: " + server.getAttribute(name, "HitRatio"));
+      System.out.println("aborts through JMX: " + server.getAttribute(name, "Aborts"));
+   }
+}
@@ -25,5 +25,17 @@ public class BufferTest {
       Page p2 = buff2.contents();
       p2.setInt(80, 9999);     // This modification
       buff2.setModified(1, 0); // won't get written to disk.
+
+      // A pin that replaces a dirty buffer must leave it pinned.
+      SimpleDB db1 = new SimpleDB("buffertest1", 400, 1); // only 1 buffer
+      BufferMgr bm1 = db1.bufferMgr();
+      Buffer b0 = bm1.pin(new BlockId("testfile", 0));
+      b0.contents().setInt(80, 1);
+      b0.setModified(1, -1);
+      bm1.unpin(b0);
+      Buffer b1 = bm1.pin(new BlockId("testfile", 1));
+      System.out.println("The replacing buffer is "
+            + (b1.isPinned() ? "pinned" : "not pinned")
+            + ", with " + bm1.available() + " buffers available");
    }
 }
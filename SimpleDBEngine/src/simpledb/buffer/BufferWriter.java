@@ -0,0 +1,137 @@
+package simpledb.buffer;
+
+import java.util.*;
+import simpledb.file.BlockId;
+import simpledb.log.LogMgr;
+
+/**
+ * Writes dirty, unpinned buffers to disk in the background,
+ * so that a client that needs a buffer usually finds a clean one
+ * and does not have to write the old contents itself.
+ * <p>
+ * Each round, the writer collects a limited number of dirty buffers
+ * from the partitions, flushes the log once up to the largest of
+ * their LSNs, and then writes the buffers in block order.
+ * A buffer that was pinned or modified again in the meantime is skipped.
+ * The rounds are separated by a fixed delay, which together with
+ * the number of buffers per round bounds the rate of writing.
+ * A write that fails leaves its buffer dirty, to be retried later;
+ * the writer counts the failures and keeps the first one.
+ */
+public class BufferWriter implements Runnable {
+   private BufferPartition[] partitions;
+   private LogMgr lm;
+   private long delay;
+   private int maxpages;
+   private volatile long writes;
+   private volatile long failures;
+   private volatile RuntimeException firstFailure;
+
+   /**
+    * Creates a writer for the specified partitions
+    * and starts its background thread.
+    * @param partitions the partitions of the buffer pool
+    * @param lm the log manager
+    * @param delay the number of milliseconds between rounds
+    * @param maxpages the maximum number of buffers written per round
+    */
+   BufferWriter(BufferPartition[] partitions, LogMgr lm, long delay, int maxpages) {
+      this.partitions = partitions;
+      this.lm = lm;
+      this.delay = delay;
+      this.maxpages = maxpages;
+      Thread t = new Thread(this, "simpledb-bufferwriter");
+      t.setDaemon(true);
+      t.start();
+   }
+
+   /**
+    * Returns the number of buffers written by the writer.
+    * @return the number of background writes
+    */
+   public long writes() {
+      return writes;
+   }
+
+   /**
+    * Returns the number of writes, or flushes of the log,
+    * that failed in the background.
+    * @return the number of failures
+    */
+   public long failures() {
+      return failures;
+   }
+
+   /**
+    * Returns the first failure of the writer.
+    * @return the exception, or null if nothing failed
+    */
+   public RuntimeException firstFailure() {
+      return firstFailure;
+   }
+
+   public void run() {
+      while (true) {
+         try {
+            Thread.sleep(delay);
+            writeRound();
+         }
+         catch (InterruptedException e) {
+            return;
+         }
+         catch (RuntimeException e) {
+            failed(e);
+         }
+      }
+   }
+
+   private void failed(RuntimeException e) {
+      if (firstFailure == null)
+         firstFailure = e;
+      failures++;
+   }
+
+   private void writeRound() {
+      List<Candidate> candidates = new ArrayList<>();
+      int perpartition = (maxpages + partitions.length - 1) / partitions.length;
+      for (BufferPartition part : partitions)
+         part.collectDirty(candidates, perpartition);
+      if (candidates.isEmpty())
+         return;
+      int maxlsn = -1;
+      for (Candidate c : candidates)
+         maxlsn = Math.max(maxlsn, c.lsn);
+      if (maxlsn >= 0)
+         lm.flush(maxlsn);
+      candidates.sort((c1, c2) -> {
+         int cmp = c1.blk.fileName().compareTo(c2.blk.fileName());
+         return (cmp != 0) ? cmp : Integer.compare(c1.blk.number(), c2.blk.number());
+      });
+      for (Candidate c : candidates) {
+         try {
+            if (c.part.writeIfUnchanged(c.buff, c.blk, c.lsn))
+               writes++;
+         }
+         catch (RuntimeException e) {
+            failed(e);
+         }
+      }
+   }
+
+   /**
+    * A dirty buffer as it was when the round began.
+    */
+   static class Candidate {
+      BufferPartition part;
+      Buffer buff;
+      BlockId blk;
+      int lsn;
+
+      Candidate(BufferPartition part, Buffer buff, BlockId blk, int lsn) {
+         this.part = part;
+         this.buff = buff;
+         this.blk = blk;
+         this.lsn = lsn;
+      }
+   }
+}
@@ -0,0 +1,40 @@
+package simpledb.buffer;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+
+public class BufferWriterTest {
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("bufferwritertest", 400, 8);
+      FileMgr fm = db.fileMgr();
+      LogMgr lm = db.logMgr();
+      for (int round=0; round<2; round++) {
+         BufferMgr bm = new BufferMgr(fm, lm, 64, 0, "lru", 1);
+         if (round == 1)
+            bm.startWriter(5, 32);
+         // modify 1000 blocks, a little at a time
+         for (int i=0; i<1000; i++) {
+            Buffer buff = bm.pin(new BlockId("testfile", i));
+            buff.contents().setInt(0, i);
+            int lsn = lm.append(new byte[] {0, 0, 0, 0});
+            buff.setModified(1, lsn);
+            bm.unpin(buff);
+            Thread.sleep(0, 500000);
+         }
+         System.out.println((round == 0) ? "without writer:" : "with writer:");
+         BufferStats stats = bm.stats();
+         System.out.println("   clean evictions: " + stats.cleanEvictions()
+                          + ", dirty evictions: " + stats.dirtyEvictions());
+         if (bm.writer() != null)
+            System.out.println("   background writes: " + bm.writer().writes());
+      }
+      // check the blocks written by both writers
+      Page p = new Page(fm.blockSize());
+      for (int i=0; i<900; i++) {
+         fm.read(new BlockId("testfile", i), p);
+         if (p.getInt(0) != i)
+            System.out.println("block " + i + " has the wrong contents");
+      }
+   }
+}
@@ -0,0 +1,53 @@
+package simpledb.buffer;
+
+/**
+ * The clock (second chance) approximation of LRU.
+ * Each buffer has a reference bit that is set when it is used.
+ * The clock hand sweeps the pool, clearing the reference bits
+ * it passes, and replaces the first unpinned buffer
+ * whose bit is already clear.
+ * A pin or unpin only sets a bit, but choosing a
+ * victim may have to pass every buffer twice.
+ */
+class ClockPolicy implements ReplacementPolicy {
+   private Buffer[] pool;
+   private boolean[] referenced;
+   private int hand = 0;
+
+   ClockPolicy(Buffer[] pool) {
+      this.pool = pool;
+      referenced = new boolean[pool.length];
+   }
+
+   public void assigned(Buffer buff) {
+      referenced[buff.index()] = true;
+   }
+
+   public void accessed(Buffer buff) {
+      referenced[buff.index()] = true;
+   }
+
+   public void pinned(Buffer buff) {
+   }
+
+   public void unpinned(Buffer buff) {
+   }
+
+   public void remove(Buffer buff) {
+      referenced[buff.index()] = false;
+   }
+
+   public Buffer chooseVictim() {
+      for (int i=0; i<2*pool.length; i++) {
+         Buffer buff = pool[hand];
+         hand = (hand + 1) % pool.length;
+         if (buff.isPinned() || buff.block() == null)
+            continue;
+         if (referenced[buff.index()])
+            referenced[buff.index()] = false;
+         else
+            return buff;
+      }
+      return null;
+   }
+}
@@ -0,0 +1,59 @@
+package simpledb.buffer;
+
+import java.util.Random;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+
+/**
+ * Measures the pin throughput of a pool with one partition
+ * and of a partitioned pool, as the number of client threads grows.
+ * Each thread pins and unpins random blocks that are already
+ * in the pool, so the benchmark measures only the cost of
+ * synchronization within the buffer manager.
+ * Usage: ConcurrentPinBenchmark [poolsize]
+ */
+public class ConcurrentPinBenchmark {
+   private static final int OPS = 200000;
+
+   public static void main(String[] args) throws InterruptedException {
+      int size = (args.length > 0) ? Integer.parseInt(args[0]) : 1024;
+      SimpleDB db = new SimpleDB("concurrentpinbenchmark", 400, 8);
+      FileMgr fm = db.fileMgr();
+      LogMgr lm = db.logMgr();
+      int cores = Runtime.getRuntime().availableProcessors();
+      System.out.println(cores + " processors, pool of " + size + " buffers");
+      System.out.println("   threads  1 partition (pins/ms)  partitioned (pins/ms)");
+      BufferMgr single = new BufferMgr(fm, lm, size, 0, "lru", 1);
+      BufferMgr parted = new BufferMgr(fm, lm, size, 0, "lru", 0);
+      for (BufferMgr bm : new BufferMgr[] {single, parted})
+         for (int i=0; i<size/2; i++)
+            bm.unpin(bm.pin(new BlockId("benchfile", i)));
+      for (int threads=1; threads<=4*cores; threads*=2) {
+         run(single, size/2, threads); // warm up
+         double t1 = run(single, size/2, threads);
+         run(parted, size/2, threads);
+         double t2 = run(parted, size/2, threads);
+         System.out.format("%10d %22.0f %22.0f%n", threads, t1, t2);
+      }
+   }
+
+   private static double run(BufferMgr bm, int numblocks, int numthreads)
+         throws InterruptedException {
+      Thread[] threads = new Thread[numthreads];
+      for (int t=0; t<numthreads; t++) {
+         Random rand = new Random(t);
+         threads[t] = new Thread(() -> {
+            for (int i=0; i<OPS; i++)
+               bm.unpin(bm.pin(new BlockId("benchfile", rand.nextInt(numblocks))));
+         });
+      }
+      long start = System.nanoTime();
+      for (Thread t : threads)
+         t.start();
+      for (Thread t : threads)
+         t.join();
+      double millis = (System.nanoTime() - start) / 1e6;
+      return numthreads * OPS / millis;
+   }
+}
@@ -0,0 +1,96 @@
+package simpledb.buffer;
+
+import java.util.*;
+import simpledb.file.BlockId;
+
+/**
+ * The LRU-K policy of O'Neil, O'Neil and Weikum, with K = 2.
+ * The policy replaces the unpinned buffer whose second most recent
+ * access is the oldest, so a block that has been used only once,
+ * such as a block of a sequential scan, is replaced before
+ * a block that is used over and over, such as the root of an index.
+ * <p>
+ * Time is counted in pins. Pins of a block that follow each other
+ * within a short correlated reference period count as a single access.
+ * The access history of a replaced block is remembered for a while,
+ * so that a block that comes back soon is not treated as new.
+ */
+class LRU2Policy implements ReplacementPolicy {
+   private static final long CORRELATED_PERIOD = 4;
+
+   private long clock = 0;
+   private long[] last, prev;
+   private TreeSet<Buffer> unpinned;
+   private Map<BlockId,long[]> history;
+
+   LRU2Policy(int numbuffs) {
+      last = new long[numbuffs];
+      prev = new long[numbuffs];
+      unpinned = new TreeSet<>((b1, b2) -> {
+         int i1 = b1.index(), i2 = b2.index();
+         if (prev[i1] != prev[i2])
+            return Long.compare(prev[i1], prev[i2]);
+         if (last[i1] != last[i2])
+            return Long.compare(last[i1], last[i2]);
+         return Integer.compare(i1, i2);
+      });
+      history = new LinkedHashMap<BlockId,long[]>(16, 0.75f, true) {
+         protected boolean removeEldestEntry(Map.Entry<BlockId,long[]> eldest) {
+            return size() > numbuffs;
+         }
+      };
+   }
+
+   public void assigned(Buffer buff) {
+      int i = buff.index();
+      long[] h = history.remove(buff.block());
+      if (h == null) {
+         last[i] = ++clock;
+         prev[i] = 0;
+      }
+      else {
+         last[i] = h[0];
+         prev[i] = h[1];
+         accessed(buff);
+      }
+   }
+
+   /**
+    * Must not be called while the buffer is in the tree
+    * of unpinned buffers, because it changes the sort key.
+    * The buffer manager guarantees this by pinning the
+    * buffer before reporting the access.
+    */
+   public void accessed(Buffer buff) {
+      int i = buff.index();
+      clock++;
+      if (clock - last[i] > CORRELATED_PERIOD)
+         prev[i] = last[i];
+      last[i] = clock;
+   }
+
+   public void pinned(Buffer buff) {
+      unpinned.remove(buff);
+   }
+
+   public void unpinned(Buffer buff) {
+      unpinned.add(buff);
+   }
+
+   /**
+    * The history of a removed buffer is not remembered,
+    * since it belonged to a scan.
+    */
+   public void remove(Buffer buff) {
+      unpinned.remove(buff);
+   }
+
+   public Buffer chooseVictim() {
+      Buffer buff = unpinned.pollFirst();
+      if (buff != null) {
+         int i = buff.index();
+         history.put(buff.block(), new long[] {last[i], prev[i]});
+      }
+      return buff;
+   }
+}
@@ -0,0 +1,40 @@
+package simpledb.buffer;
+
+import java.util.*;
+
+/**
+ * Replaces the unpinned buffer whose block was used least recently.
+ * The unpinned buffers are kept in a linked set in the order
+ * they became unpinned; a buffer leaves the set when it is pinned,
+ * so the victim is always the head of the set.
+ */
+class LRUPolicy implements ReplacementPolicy {
+   private LinkedHashSet<Buffer> unpinned = new LinkedHashSet<>();
+
+   public void assigned(Buffer buff) {
+   }
+
+   public void accessed(Buffer buff) {
+   }
+
+   public void pinned(Buffer buff) {
+      unpinned.remove(buff);
+   }
+
+   public void unpinned(Buffer buff) {
+      unpinned.add(buff);
+   }
+
+   public void remove(Buffer buff) {
+      unpinned.remove(buff);
+   }
+
+   public Buffer chooseVictim() {
+      Iterator<Buffer> iter = unpinned.iterator();
+      if (!iter.hasNext())
+         return null;
+      Buffer buff = iter.next();
+      iter.remove();
+      return buff;
+   }
+}
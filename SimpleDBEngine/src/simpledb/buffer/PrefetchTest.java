@@ -0,0 +1,34 @@
+package simpledb.buffer;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+
+public class PrefetchTest {
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("prefetchtest", 400, 64);
+      FileMgr fm = db.fileMgr();
+      BufferMgr bm = db.bufferMgr();
+      Page p = new Page(fm.blockSize());
+      while (fm.length("testfile") < 500) {
+         BlockId blk = fm.append("testfile");
+         p.setInt(0, blk.number());
+         fm.write(blk, p);
+      }
+
+      // scan the file twice, block by block
+      for (int pass=1; pass<=2; pass++) {
+         for (int i=0; i<500; i++) {
+            Buffer buff = bm.pin(new BlockId("testfile", i));
+            if (buff.contents().getInt(0) != i)
+               System.out.println("block " + i + " has the wrong contents");
+            Thread.sleep(0, 200000); // simulate the work of the scan
+            bm.unpin(buff);
+         }
+      }
+      Prefetcher pf = bm.prefetcher();
+      System.out.println("blocks read ahead: " + pf.issued());
+      System.out.println("prefetch hits: " + pf.hits() + " (late: " + pf.lateHits() + ")");
+      System.out.println("prefetch misses: " + pf.misses());
+      System.out.println("wasted prefetches: " + pf.wasted());
+   }
+}
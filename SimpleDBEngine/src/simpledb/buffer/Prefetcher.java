@@ -0,0 +1,249 @@
+package simpledb.buffer;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import simpledb.file.*;
+
+/**
+ * Detects sequential access to a file and reads the
+ * following blocks into unpinned buffers in the background.
+ * The buffer manager reports every pin to the prefetcher.
+ * When a file is pinned block after block, the prefetcher queues
+ * the next blocks of that file, and a daemon thread asks the
+ * buffer manager to load them.
+ * <p>
+ * The prefetch depth of each stream adapts to the speed of the scan:
+ * it doubles whenever the scan catches up with a block that is still
+ * being loaded, and it halves whenever a prefetched block is
+ * replaced before anyone pins it.
+ * A scan that reads through a {@link BufferRing} is only read ahead
+ * into free buffers, so that its prefetching does not replace
+ * the buffers of other transactions either.
+ * <p>
+ * The streams are kept in stripes chosen by hashing the file name,
+ * each with its own lock, so that the pins of different files
+ * do not contend; a pin is reported after the partition lock is
+ * released, and a sequential pin allocates nothing. The queue holds
+ * the streams that have blocks to read ahead, and the background
+ * thread reads their blocks in turn.
+ */
+public class Prefetcher implements Runnable {
+   static final int RESIDENT = 0, READ = 1, PREFETCHED = 2, LOADING = 3;
+   private static final int MIN_DEPTH = 1;
+   private static final int NUM_STRIPES = 16;
+   private static final int STREAMS_PER_STRIPE = 4;
+
+   private BufferMgr bm;
+   private FileMgr fm;
+   private int maxdepth;
+   private BlockingQueue<Stream> requests;
+   private List<Map<String,Stream>> stripes = new ArrayList<>();
+   private volatile long issued, failures;
+   private volatile RuntimeException firstFailure;
+   private LongAdder hits = new LongAdder(), lateHits = new LongAdder();
+   private LongAdder misses = new LongAdder(), wasted = new LongAdder();
+
+   /**
+    * Creates a prefetcher for the specified buffer manager
+    * and starts its background thread.
+    * @param bm the buffer manager
+    * @param fm the file manager
+    * @param maxdepth the maximum number of blocks read ahead of a scan
+    */
+   Prefetcher(BufferMgr bm, FileMgr fm, int maxdepth) {
+      this.bm = bm;
+      this.fm = fm;
+      this.maxdepth = maxdepth;
+      requests = new ArrayBlockingQueue<>(NUM_STRIPES * STREAMS_PER_STRIPE);
+      for (int i=0; i<NUM_STRIPES; i++)
+         stripes.add(new LinkedHashMap<String,Stream>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String,Stream> eldest) {
+               return size() > STREAMS_PER_STRIPE;
+            }
+         });
+      Thread t = new Thread(this, "simpledb-prefetcher");
+      t.setDaemon(true);
+      t.start();
+   }
+
+   /**
+    * Returns the number of blocks that were read ahead.
+    * @return the number of prefetch reads
+    */
+   public long issued() {
+      return issued;
+   }
+
+   /**
+    * Returns the number of pins that found their block
+    * already prefetched.
+    * @return the number of prefetch hits
+    */
+   public long hits() {
+      return hits.sum();
+   }
+
+   /**
+    * Returns the number of prefetch hits that had to wait
+    * for the prefetch read to complete.
+    * @return the number of late prefetch hits
+    */
+   public long lateHits() {
+      return lateHits.sum();
+   }
+
+   /**
+    * Returns the number of pins of a sequential scan
+    * that had to read their block synchronously.
+    * @return the number of prefetch misses
+    */
+   public long misses() {
+      return misses.sum();
+   }
+
+   /**
+    * Returns the number of prefetched blocks that were
+    * replaced before being pinned.
+    * @return the number of wasted prefetches
+    */
+   public long wasted() {
+      return wasted.sum();
+   }
+
+   /**
+    * Returns the number of read aheads that failed.
+    * A failed read ahead is harmless, since the scan
+    * reads the block itself.
+    * @return the number of failures
+    */
+   public long failures() {
+      return failures;
+   }
+
+   /**
+    * Returns the first failure of a read ahead.
+    * @return the exception, or null if nothing failed
+    */
+   public RuntimeException firstFailure() {
+      return firstFailure;
+   }
+
+   public void run() {
+      while (true) {
+         try {
+            Stream s = requests.take();
+            int n;
+            boolean ring;
+            synchronized (stripeFor(s.filename)) {
+               n = s.next;
+               ring = s.ring;
+               if (n > s.target) {
+                  s.queued = false;
+                  continue;
+               }
+               s.next++;
+               s.queued = requests.offer(s);
+            }
+            BlockId blk = new BlockId(s.filename, n);
+            try {
+               if (n < fm.length(s.filename) && bm.prefetch(blk, ring))
+                  issued++;
+            }
+            catch (RuntimeException e) {
+               if (firstFailure == null)
+                  firstFailure = e;
+               failures++;
+            }
+         }
+         catch (InterruptedException e) {
+            return;
+         }
+      }
+   }
+
+   /**
+    * Records a pin of the specified block, and queues the
+    * stream of the file if the access is sequential.
+    * Called by a buffer partition after releasing its lock.
+    * @param blk the pinned block
+    * @param how whether the block was resident, read, or prefetched
+    * @param ring whether the block was pinned through a ring
+    */
+   void accessed(BlockId blk, int how, boolean ring) {
+      Map<String,Stream> streams = stripeFor(blk.fileName());
+      synchronized (streams) {
+         Stream s = streams.get(blk.fileName());
+         if (s == null) {
+            streams.put(blk.fileName(), new Stream(blk.fileName(), blk.number()));
+            return;
+         }
+         s.ring = ring;
+         if (blk.number() == s.last)
+            return;
+         if (blk.number() != s.last + 1) {
+            s.restart(blk.number());
+            return;
+         }
+         s.last = blk.number();
+         s.run++;
+         if (how == PREFETCHED)
+            hits.increment();
+         else if (how == LOADING) {
+            hits.increment();
+            lateHits.increment();
+            s.depth = Math.min(maxdepth, 2 * s.depth);
+         }
+         else if (how == READ && s.run > 1)
+            misses.increment();
+         s.next = Math.max(s.next, s.last + 1);
+         s.target = s.last + s.depth;
+         if (!s.queued && s.next <= s.target)
+            s.queued = requests.offer(s);
+      }
+   }
+
+   /**
+    * Records that a prefetched buffer was replaced
+    * before being pinned.
+    * Called by a buffer partition while holding its lock.
+    * @param blk the block that had been prefetched
+    */
+   void evictedUnused(BlockId blk) {
+      wasted.increment();
+      Map<String,Stream> streams = stripeFor(blk.fileName());
+      synchronized (streams) {
+         Stream s = streams.get(blk.fileName());
+         if (s != null)
+            s.depth = Math.max(MIN_DEPTH, s.depth / 2);
+      }
+   }
+
+   private Map<String,Stream> stripeFor(String filename) {
+      return stripes.get((filename.hashCode() & 0x7fffffff) % NUM_STRIPES);
+   }
+
+   /**
+    * The read-ahead state of the sequential scan of a file.
+    * The blocks from next to target remain to be read ahead.
+    * A stream is in the queue at most once.
+    */
+   private static class Stream {
+      String filename;
+      int last, next, target, run, depth;
+      boolean ring, queued;
+
+      Stream(String filename, int blknum) {
+         this.filename = filename;
+         restart(blknum);
+         depth = MIN_DEPTH;
+      }
+
+      void restart(int blknum) {
+         last = blknum;
+         next = blknum + 1;
+         target = blknum;
+         run = 0;
+      }
+   }
+}
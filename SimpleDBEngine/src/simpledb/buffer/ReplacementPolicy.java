@@ -0,0 +1,77 @@
+package simpledb.buffer;
+
+/**
+ * The interface implemented by each buffer replacement policy.
+ * The buffer manager tells the policy about every pin and unpin,
+ * and asks it for a victim when a block must be read into a
+ * buffer that has already been assigned another block.
+ * Buffers that have never been assigned a block are
+ * used first, and are never seen by the policy.
+ * All methods are called while holding the lock of the buffer
+ * partition that owns the buffer; each partition has a policy of its own.
+ */
+public interface ReplacementPolicy {
+   /**
+    * Records that the buffer has just been assigned a new block.
+    * The buffer is pinned.
+    * @param buff the buffer
+    */
+   void assigned(Buffer buff);
+
+   /**
+    * Records a pin of a block that was already in the buffer.
+    * The buffer is pinned.
+    * @param buff the buffer
+    */
+   void accessed(Buffer buff);
+
+   /**
+    * Records that an unpinned buffer has been pinned.
+    * @param buff the buffer
+    */
+   void pinned(Buffer buff);
+
+   /**
+    * Records that the pin count of the buffer has dropped to zero.
+    * @param buff the buffer
+    */
+   void unpinned(Buffer buff);
+
+   /**
+    * Chooses an unpinned buffer to be replaced and forgets it.
+    * The buffer manager assigns the returned buffer a new block
+    * and then calls {@link #assigned(Buffer)}.
+    * @return the victim, or null if every buffer is pinned
+    */
+   Buffer chooseVictim();
+
+   /**
+    * Forgets an unpinned buffer that the buffer manager
+    * is taking out of the pool without asking the policy,
+    * such as a buffer released by a {@link BufferRing}.
+    * @param buff the buffer
+    */
+   void remove(Buffer buff);
+
+   /**
+    * Creates the replacement policy having the specified name,
+    * which is one of "lru", "clock", "lru2" or "2q".
+    * @param name the name of the policy
+    * @param pool the buffers of the buffer manager
+    * @return the replacement policy
+    */
+   static ReplacementPolicy create(String name, Buffer[] pool) {
+      switch (name.toLowerCase()) {
+      case "lru":
+         return new LRUPolicy();
+      case "clock":
+         return new ClockPolicy(pool);
+      case "lru2":
+         return new LRU2Policy(pool.length);
+      case "2q":
+         return new TwoQueuePolicy(pool.length);
+      default:
+         throw new IllegalArgumentException("unknown replacement policy: " + name);
+      }
+   }
+}
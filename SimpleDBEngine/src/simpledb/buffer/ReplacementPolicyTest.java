@@ -0,0 +1,94 @@
+package simpledb.buffer;
+
+import java.io.*;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+
+/**
+ * Replays a sequence of pins against each replacement policy
+ * and reports the hit ratio for several pool sizes.
+ * The trace is a file written by {@link BufferMgr#recordPins};
+ * each block is pinned and then unpinned immediately.
+ * Without a trace file, a synthetic trace is used, in which
+ * point queries that read the catalog and an index are
+ * interleaved with full scans of a large table.
+ * The blocks are read beyond the end of their files,
+ * so the replay does not depend on the database that was traced.
+ * Usage: ReplacementPolicyTest [tracefile [poolsize ...]]
+ */
+public class ReplacementPolicyTest {
+   private static final String[] POLICIES = {"lru", "clock", "lru2", "2q"};
+
+   public static void main(String[] args) throws IOException {
+      List<BlockId> trace = (args.length > 0) ? readTrace(args[0]) : syntheticTrace();
+      int[] sizes = {16, 64, 256};
+      if (args.length > 1) {
+         sizes = new int[args.length - 1];
+         for (int i=1; i<args.length; i++)
+            sizes[i-1] = Integer.parseInt(args[i]);
+      }
+      SimpleDB db = new SimpleDB("policytest", 400, 8);
+      FileMgr fm = db.fileMgr();
+      LogMgr lm = db.logMgr();
+      System.out.println(trace.size() + " pins");
+      System.out.print("   pool size");
+      for (String policy : POLICIES)
+         System.out.format("%8s", policy);
+      System.out.println();
+      for (int size : sizes) {
+         System.out.format("%12d", size);
+         for (String policy : POLICIES) {
+            BufferMgr bm = new BufferMgr(fm, lm, size, 0, policy);
+            int hits = 0;
+            for (BlockId blk : trace) {
+               if (bm.isResident(blk))
+                  hits++;
+               bm.unpin(bm.pin(blk));
+            }
+            System.out.format("%7.1f%%", 100.0 * hits / trace.size());
+         }
+         System.out.println();
+      }
+   }
+
+   private static List<BlockId> readTrace(String filename) throws IOException {
+      List<BlockId> trace = new ArrayList<>();
+      try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+         String line;
+         while ((line = reader.readLine()) != null) {
+            int pos = line.lastIndexOf(' ');
+            if (pos > 0)
+               trace.add(new BlockId(line.substring(0, pos),
+                                     Integer.parseInt(line.substring(pos+1))));
+         }
+      }
+      return trace;
+   }
+
+   /**
+    * Each point query reads the catalog, the root of an index,
+    * one of its leaves and one data block.
+    * One query in fifty scans a 500-block table instead.
+    */
+   private static List<BlockId> syntheticTrace() {
+      List<BlockId> trace = new ArrayList<>();
+      Random rand = new Random(1);
+      for (int q=0; q<20000; q++) {
+         if (q % 50 == 49) {
+            for (int i=0; i<500; i++)
+               trace.add(new BlockId("bigtable.tbl", i));
+            continue;
+         }
+         trace.add(new BlockId("tblcat.tbl", 0));
+         trace.add(new BlockId("fldcat.tbl", rand.nextInt(2)));
+         trace.add(new BlockId("idx.leaf", 0));
+         trace.add(new BlockId("idx.leaf", 1 + rand.nextInt(40)));
+         // skewed data accesses: most queries touch a small hot region
+         int blk = rand.nextInt(10) < 8 ? rand.nextInt(30) : rand.nextInt(1000);
+         trace.add(new BlockId("orders.tbl", blk));
+      }
+      return trace;
+   }
+}
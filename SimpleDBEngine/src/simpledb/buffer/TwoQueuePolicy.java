@@ -0,0 +1,95 @@
+package simpledb.buffer;
+
+import java.util.*;
+import simpledb.file.BlockId;
+
+/**
+ * The full 2Q policy of Johnson and Shasha.
+ * A block read for the first time goes into the FIFO queue A1in.
+ * When it is replaced from A1in, its id is remembered in the
+ * ghost queue A1out. A block that is read again while its id
+ * is in A1out has proven to be hot, and goes into the LRU queue Am.
+ * Blocks of a single sequential scan therefore pass through A1in
+ * without disturbing the hot blocks in Am.
+ * <p>
+ * A1in holds a quarter of the pool, and A1out
+ * remembers as many blocks as half of the pool.
+ * Pinned buffers stay in their queue and are skipped
+ * when choosing a victim.
+ */
+class TwoQueuePolicy implements ReplacementPolicy {
+   private int kin, kout;
+   private LinkedHashSet<Buffer> a1in = new LinkedHashSet<>();
+   private LinkedHashSet<Buffer> am = new LinkedHashSet<>();
+   private LinkedHashSet<BlockId> a1out = new LinkedHashSet<>();
+
+   TwoQueuePolicy(int numbuffs) {
+      kin = Math.max(1, numbuffs / 4);
+      kout = Math.max(1, numbuffs / 2);
+   }
+
+   public void assigned(Buffer buff) {
+      if (a1out.remove(buff.block()))
+         am.add(buff);
+      else
+         a1in.add(buff);
+   }
+
+   public void accessed(Buffer buff) {
+      if (am.remove(buff))
+         am.add(buff);
+   }
+
+   public void pinned(Buffer buff) {
+   }
+
+   public void unpinned(Buffer buff) {
+   }
+
+   /**
+    * A removed buffer is not remembered in A1out,
+    * since it belonged to a scan.
+    */
+   public void remove(Buffer buff) {
+      if (!a1in.remove(buff))
+         am.remove(buff);
+   }
+
+   public Buffer chooseVictim() {
+      if (a1in.size() > kin) {
+         Buffer buff = removeUnpinned(a1in);
+         if (buff != null) {
+            remember(buff.block());
+            return buff;
+         }
+      }
+      Buffer buff = removeUnpinned(am);
+      if (buff == null) {
+         buff = removeUnpinned(a1in);
+         if (buff != null)
+            remember(buff.block());
+      }
+      return buff;
+   }
+
+   private Buffer removeUnpinned(LinkedHashSet<Buffer> queue) {
+      Iterator<Buffer> iter = queue.iterator();
+      while (iter.hasNext()) {
+         Buffer buff = iter.next();
+         if (!buff.isPinned()) {
+            iter.remove();
+            return buff;
+         }
+      }
+      return null;
+   }
+
+   private void remember(BlockId blk) {
+      a1out.add(blk);
+      if (a1out.size() > kout) {
+         Iterator<BlockId> iter = a1out.iterator();
+         iter.next();
+         iter.remove();
+      }
+   }
+}
@@ -1,14 +1,34 @@
 package simpledb.file;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
-import java.sql.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * The file manager, which reads and writes blocks of the
+ * database files.
+ * Reads and writes use positional channel I/O, so they do not
+ * share a file pointer and can proceed concurrently, even on
+ * the same file.
+ * Only operations that change the size of a file are serialized,
+ * using a lock chosen by hashing the file name.
+ * <p>
+ * Files are opened without synchronous writes.
+ * A write is only guaranteed to be on disk after the file
+ * has been forced, by calling {@link #force(String)} or {@link #forceAll()}.
+ * Temporary files are never forced.
+ */
 public class FileMgr {
+   private static final int NUM_STRIPES = 16;
    private File dbDirectory;
    private int blocksize;
    private boolean isNew;
-   private Map<String,RandomAccessFile> openFiles = new HashMap<>();
+   private Map<String,FileChannel> openFiles = new ConcurrentHashMap<>();
+   private Object[] stripes = new Object[NUM_STRIPES];
+   private Set<String> unforcedFiles = ConcurrentHashMap.newKeySet();
+   private Map<String,Object> forceLocks = new ConcurrentHashMap<>();
 
    public FileMgr(File dbDirectory, int blocksize) {
       this.dbDirectory = dbDirectory;
@@ -23,70 +43,226 @@ public class FileMgr {
       for (String filename : dbDirectory.list())
          if (filename.startsWith("temp"))
          		new File(dbDirectory, filename).delete();
+
+      for (int i=0; i<NUM_STRIPES; i++)
+         stripes[i] = new Object();
    }
 
-   public synchronized void read(BlockId blk, Page p) {
+   public void read(BlockId blk, Page p) {
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.getChannel().read(p.contents());
+         FileChannel fc = getFile(blk.fileName());
+         ByteBuffer bb = p.contents();
+         long pos = (long) blk.number() * blocksize;
+         while (bb.hasRemaining()) {
+            int n = fc.read(bb, pos);
+            if (n < 0)
+               break;  // past the end of the file
+            pos += n;
+         }
       }
       catch (IOException e) {
          throw new RuntimeException("cannot read block " + blk);
       }
    }
 
-   public synchronized void write(BlockId blk, Page p) {
+   public void write(BlockId blk, Page p) {
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.getChannel().write(p.contents());
+         FileChannel fc = getFile(blk.fileName());
+         ByteBuffer bb = p.contents();
+         long pos = (long) blk.number() * blocksize;
+         while (bb.hasRemaining())
+            pos += fc.write(bb, pos);
+         unforced(blk.fileName());
       }
       catch (IOException e) {
          throw new RuntimeException("cannot write block" + blk);
       }
    }
 
-   public synchronized BlockId append(String filename) {
-      int newblknum = length(filename);
-      BlockId blk = new BlockId(filename, newblknum);
-      byte[] b = new byte[blocksize];
+   public BlockId append(String filename) {
+      synchronized (stripeFor(filename)) {
+         int newblknum = length(filename);
+         BlockId blk = new BlockId(filename, newblknum);
+         ByteBuffer bb = ByteBuffer.allocate(blocksize);
+         try {
+            FileChannel fc = getFile(blk.fileName());
+            long pos = (long) blk.number() * blocksize;
+            while (bb.hasRemaining())
+               pos += fc.write(bb, pos);
+            unforced(filename);
+         }
+         catch (IOException e) {
+            throw new RuntimeException("cannot append block" + blk);
+         }
+         return blk;
+      }
+   }
+
+   public int length(String filename) {
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.write(b);
+         FileChannel fc = getFile(filename);
+         return (int)(fc.size() / blocksize);
       }
       catch (IOException e) {
-         throw new RuntimeException("cannot append block" + blk);
+         throw new RuntimeException("cannot access " + filename);
       }
-      return blk;
    }
 
-   public int length(String filename) {
+   /**
+    * Forces the writes made to the specified file to disk.
+    * Does nothing if the file is temporary.
+    * A client that calls the method while another client is
+    * forcing the same file waits for that force to complete,
+    * and then only forces the file again if it has been written since.
+    * @param filename the name of the file
+    */
+   public void force(String filename) {
+      if (isTemp(filename))
+         return;
+      synchronized (forceLocks.computeIfAbsent(filename, f -> new Object())) {
+         if (!unforcedFiles.remove(filename))
+            return;
+         try {
+            forceFile(filename);
+         }
+         catch (IOException e) {
+            unforcedFiles.add(filename);
+            throw new RuntimeException("cannot force " + filename);
+         }
+      }
+   }
+
+   /**
+    * Forces the file to disk, once it is known to have
+    * unforced writes.
+    * @param filename the name of the file
+    */
+   void forceFile(String filename) throws IOException {
+      getFile(filename).force(false);
+   }
+
+   /**
+    * Forces the writes made to every non-temporary file to disk.
+    */
+   public void forceAll() {
+      for (String filename : unforcedFiles)
+         force(filename);
+   }
+
+   /**
+    * Returns the names of the files of the database
+    * that start with the specified prefix.
+    * @param prefix the beginning of the file names
+    * @return the names of those files
+    */
+   public List<String> files(String prefix) {
+      List<String> result = new ArrayList<>();
+      for (String filename : dbDirectory.list())
+         if (filename.startsWith(prefix))
+            result.add(filename);
+      return result;
+   }
+
+   /**
+    * Returns the file at the specified path, relative to the
+    * database directory. The path cannot lead outside of the
+    * directory, so that a client can only read the files
+    * that were placed in it.
+    * @param path the path of the file in the database directory
+    * @return the file
+    */
+   public File file(String path) {
       try {
-         RandomAccessFile f = getFile(filename);
-         return (int)(f.length() / blocksize);
+         File dir = dbDirectory.getCanonicalFile();
+         File f = new File(dir, path).getCanonicalFile();
+         if (!f.toPath().startsWith(dir.toPath()) || f.equals(dir))
+            throw new RuntimeException(path + " is not in the database directory");
+         return f;
       }
       catch (IOException e) {
-         throw new RuntimeException("cannot access " + filename);
+         throw new RuntimeException("cannot resolve " + path);
+      }
+   }
+
+   /**
+    * Closes and deletes the specified file.
+    * The caller must ensure that no client still uses the file.
+    * @param filename the name of the file
+    */
+   public void delete(String filename) {
+      synchronized (stripeFor(filename)) {
+         FileChannel fc = openFiles.remove(filename);
+         unforcedFiles.remove(filename);
+         try {
+            if (fc != null)
+               fc.close();
+         }
+         catch (IOException e) {
+            throw new RuntimeException("cannot close " + filename);
+         }
+         new File(dbDirectory, filename).delete();
       }
    }
 
    public boolean isNew() {
       return isNew;
    }
-   
+
    public int blockSize() {
       return blocksize;
    }
 
-   private RandomAccessFile getFile(String filename) throws IOException {
-      RandomAccessFile f = openFiles.get(filename);
-      if (f == null) {
-         File dbTable = new File(dbDirectory, filename);
-         f = new RandomAccessFile(dbTable, "rws");
-         openFiles.put(filename, f);
+   /**
+    * Records that the specified file has writes
+    * that have not been forced to disk.
+    * @param filename the name of the file
+    */
+   void unforced(String filename) {
+      if (!isTemp(filename))
+         unforcedFiles.add(filename);
+   }
+
+   /**
+    * Returns true if the specified file holds a temporary table.
+    * Temporary files are deleted at startup, so their
+    * contents never need to be forced or logged.
+    * @param filename the name of the file
+    * @return true if the file is temporary
+    */
+   public static boolean isTemp(String filename) {
+      return filename.startsWith("temp");
+   }
+
+   /**
+    * Returns the lock that serializes changes to the
+    * size of the specified file.
+    * Files whose names hash to the same stripe share a lock.
+    * @param filename the name of the file
+    * @return the lock object for that file
+    */
+   Object stripeFor(String filename) {
+      return stripes[(filename.hashCode() & 0x7fffffff) % NUM_STRIPES];
+   }
+
+   /**
+    * Returns the channel of the specified file,
+    * opening the file if necessary.
+    * The channel is safe for concurrent positional reads and writes.
+    * @param filename the name of the file
+    * @return the channel of that file
+    */
+   FileChannel getFile(String filename) throws IOException {
+      FileChannel fc = openFiles.get(filename);
+      if (fc == null) {
+         synchronized (stripeFor(filename)) {
+            fc = openFiles.get(filename);
+            if (fc == null) {
+               File dbTable = new File(dbDirectory, filename);
+               fc = new RandomAccessFile(dbTable, "rw").getChannel();
+               openFiles.put(filename, fc);
+            }
+         }
       }
-      return f;
+      return fc;
    }
 }
@@ -0,0 +1,84 @@
+package simpledb.file;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Measures block read throughput as the number of reader threads grows.
+ * Each run is done twice: once through the file manager, and once
+ * through a single-monitor seek-and-read path that mimics the
+ * original FileMgr design.
+ * Usage: FileReadBenchmark [numblocks] [readsPerThread]
+ */
+public class FileReadBenchmark {
+   private static final int BLOCK_SIZE = 4096;
+   private static final String FILENAME = "benchfile";
+
+   public static void main(String[] args) throws Exception {
+      int numblocks = (args.length > 0) ? Integer.parseInt(args[0]) : 2048;
+      int numreads  = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+      File dir = new File("filereadbenchmark");
+      FileMgr fm = new FileMgr(dir, BLOCK_SIZE);
+      Page p = new Page(BLOCK_SIZE);
+      while (fm.length(FILENAME) < numblocks) {
+         BlockId blk = fm.append(FILENAME);
+         p.setInt(0, blk.number());
+         fm.write(blk, p);
+      }
+      RandomAccessFile raf = new RandomAccessFile(new File(dir, FILENAME), "r");
+
+      System.out.println("threads   positional reads/s   single-monitor reads/s");
+      for (int nthreads=1; nthreads<=16; nthreads*=2) {
+         double pos = run(nthreads, numreads, numblocks, fm, null);
+         double mon = run(nthreads, numreads, numblocks, fm, raf);
+         System.out.format("%7d %20.0f %24.0f%n", nthreads, pos, mon);
+      }
+      raf.close();
+   }
+
+   /**
+    * Runs the specified number of threads, each reading random blocks,
+    * and returns the aggregate number of reads per second.
+    * If raf is null, the reads go through the file manager;
+    * otherwise they go through the single-monitor path.
+    */
+   private static double run(int nthreads, int numreads, int numblocks,
+                             FileMgr fm, RandomAccessFile raf) throws InterruptedException {
+      Thread[] threads = new Thread[nthreads];
+      for (int i=0; i<nthreads; i++) {
+         long seed = i;
+         threads[i] = new Thread(() -> {
+            Random rand = new Random(seed);
+            Page p = new Page(BLOCK_SIZE);
+            for (int j=0; j<numreads; j++) {
+               BlockId blk = new BlockId(FILENAME, rand.nextInt(numblocks));
+               if (raf == null)
+                  fm.read(blk, p);
+               else
+                  monitorRead(raf, blk, p);
+               if (p.getInt(0) != blk.number())
+                  throw new RuntimeException("wrong contents for " + blk);
+            }
+         });
+      }
+      long start = System.nanoTime();
+      for (Thread t : threads)
+         t.start();
+      for (Thread t : threads)
+         t.join();
+      double secs = (System.nanoTime() - start) / 1e9;
+      return (double) nthreads * numreads / secs;
+   }
+
+   private static void monitorRead(RandomAccessFile raf, BlockId blk, Page p) {
+      synchronized (raf) {
+         try {
+            raf.seek((long) blk.number() * BLOCK_SIZE);
+            raf.getChannel().read(p.contents());
+         }
+         catch (IOException e) {
+            throw new RuntimeException("cannot read block " + blk);
+         }
+      }
+   }
+}
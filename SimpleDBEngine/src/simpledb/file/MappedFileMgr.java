@@ -0,0 +1,141 @@
+package simpledb.file;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A file manager that serves reads and writes from memory-mapped
+ * regions of the database files, instead of issuing a system call
+ * for each block.
+ * Each file is mapped in fixed-size regions, and each region only
+ * covers the part of the file that exists, since mapping more
+ * would extend the file.
+ * When a file grows, the blocks past the mapped part of its
+ * last region are accessed through the channel, until the
+ * region can be mapped again at twice its mapped size or in full;
+ * a growing file is therefore remapped a few times per region,
+ * rather than at every append.
+ * Like the channel writes of {@link FileMgr}, writes to a
+ * mapping are not forced when they are made; they reach the disk
+ * when the file is forced, which the log and the transactions
+ * do before they rely on them.
+ */
+public class MappedFileMgr extends FileMgr {
+   private static final int REGION_BYTES = 8 * 1024 * 1024;
+   private int regionSize;
+   private Map<String,MappedByteBuffer[]> regions = new ConcurrentHashMap<>();
+
+   public MappedFileMgr(File dbDirectory, int blocksize) {
+      super(dbDirectory, blocksize);
+      regionSize = Math.max(1, REGION_BYTES / blocksize) * blocksize;
+   }
+
+   public void read(BlockId blk, Page p) {
+      MappedByteBuffer region = regionFor(blk);
+      if (region == null) {  // the block is not mapped yet
+         super.read(blk, p);
+         return;
+      }
+      ByteBuffer src = region.duplicate();
+      int offset = regionOffset(blk);
+      src.position(offset);
+      src.limit(offset + blockSize());
+      p.contents().put(src);
+   }
+
+   public void write(BlockId blk, Page p) {
+      MappedByteBuffer region = regionFor(blk);
+      if (region == null) {  // the block is not mapped yet
+         super.write(blk, p);
+         return;
+      }
+      ByteBuffer dst = region.duplicate();
+      dst.position(regionOffset(blk));
+      dst.put(p.contents());
+      unforced(blk.fileName());
+   }
+
+   /**
+    * Drops the mapped regions of the specified file,
+    * and deletes it.
+    * @param filename the name of the file
+    */
+   public void delete(String filename) {
+      synchronized (stripeFor(filename)) {
+         regions.remove(filename);
+         super.delete(filename);
+      }
+   }
+
+   /**
+    * Forces the mapped regions of the specified file to disk,
+    * as well as any writes made through its channel.
+    * Like {@link FileMgr#force(String)}, this only happens if the
+    * file is not temporary and has been written since it was forced.
+    * @param filename the name of the file
+    */
+   void forceFile(String filename) throws IOException {
+      MappedByteBuffer[] rs = regions.get(filename);
+      if (rs != null)
+         for (MappedByteBuffer region : rs)
+            if (region != null)
+               region.force();
+      super.forceFile(filename);
+   }
+
+   /**
+    * Returns the mapped region containing the specified block,
+    * mapping it if necessary.
+    * Returns null if the block lies beyond the end of the file,
+    * or beyond the mapped part of its region but within
+    * twice its size, so that the region is not remapped yet.
+    */
+   private MappedByteBuffer regionFor(BlockId blk) {
+      int r = regionNumber(blk.number());
+      int end = regionOffset(blk) + blockSize();
+      MappedByteBuffer mapped = mappedRegion(blk.fileName(), r);
+      if (mapped != null && mapped.capacity() >= end)
+         return mapped;
+      if (mapped != null && 2L * mapped.capacity() >= end)
+         return null;
+      synchronized (stripeFor(blk.fileName())) {
+         try {
+            mapped = mappedRegion(blk.fileName(), r);
+            if (mapped != null && mapped.capacity() >= end)
+               return mapped;
+            FileChannel fc = getFile(blk.fileName());
+            long start = (long) r * regionSize;
+            long len = Math.min(regionSize, fc.size() - start);
+            if (len < end)
+               return null;
+            MappedByteBuffer region = fc.map(FileChannel.MapMode.READ_WRITE, start, len);
+            MappedByteBuffer[] rs = regions.get(blk.fileName());
+            int size = Math.max(r+1, (rs == null) ? 0 : rs.length);
+            MappedByteBuffer[] newrs = (rs == null) ? new MappedByteBuffer[size] : Arrays.copyOf(rs, size);
+            newrs[r] = region;
+            regions.put(blk.fileName(), newrs);
+            return region;
+         }
+         catch (IOException e) {
+            throw new RuntimeException("cannot map block " + blk);
+         }
+      }
+   }
+
+   private MappedByteBuffer mappedRegion(String filename, int r) {
+      MappedByteBuffer[] rs = regions.get(filename);
+      return (rs != null && r < rs.length) ? rs[r] : null;
+   }
+
+   private int regionNumber(int blknum) {
+      return (int) ((long) blknum * blockSize() / regionSize);
+   }
+
+   private int regionOffset(BlockId blk) {
+      return (int) ((long) blk.number() * blockSize() % regionSize);
+   }
+}
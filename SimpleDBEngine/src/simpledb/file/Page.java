@@ -25,18 +25,18 @@ public class Page {
       bb.putInt(offset, n);
    }
 
+   // Absolute gets and puts do not move the position of the buffer,
+   // so that concurrent readers of the page do not disturb each other
    public byte[] getBytes(int offset) {
-      bb.position(offset);
-      int length = bb.getInt();
+      int length = bb.getInt(offset);
       byte[] b = new byte[length];
-      bb.get(b);
+      bb.get(offset + Integer.BYTES, b);
       return b;
    }
 
    public void setBytes(int offset, byte[] b) {
-      bb.position(offset);
-      bb.putInt(b.length);
-      bb.put(b);
+      bb.putInt(offset, b.length);
+      bb.put(offset + Integer.BYTES, b);
    }
    
    public String getString(int offset) {
@@ -49,6 +49,19 @@ public class Page {
       setBytes(offset, b);
    }
 
+   // For saving old versions of data pages
+   public byte[] copy() {
+      byte[] b = new byte[bb.capacity()];
+      bb.get(0, b);
+      return b;
+   }
+
+   public byte[] copy(int offset, int length) {
+      byte[] b = new byte[length];
+      bb.get(offset, b);
+      return b;
+   }
+
    public static int maxLength(int strlen) {
       float bytesPerChar = CHARSET.newEncoder().maxBytesPerChar();
       return Integer.BYTES + (strlen * (int)bytesPerChar);
@@ -104,6 +104,25 @@ public class IndexUpdatePlanner implements UpdatePlanner {
       return count;
    }
    
+   public int executeLoad(LoadData data, Transaction tx) {
+      String tblname = data.tableName();
+      Layout layout = mdm.getLayout(tblname, tx);
+      
+      // the records are loaded a page at a time,
+      // but their index records are inserted one at a time
+      Map<String,Index> indexes = new HashMap<>();
+      for (Map.Entry<String,IndexInfo> e : mdm.getIndexInfo(tblname, tx).entrySet())
+         indexes.put(e.getKey(), e.getValue().open());
+      BulkLoader loader = new BulkLoader(tx, tblname, layout);
+      try {
+         return loader.load(data.fileName(), indexes);
+      }
+      finally {
+         for (Index idx : indexes.values())
+            idx.close();
+      }
+   }
+   
    public int executeCreateTable(CreateTableData data, Transaction tx) {
       mdm.createTable(data.tableName(), data.newSchema(), tx);
       return 0;
@@ -15,15 +15,19 @@ class EmbeddedConnection extends ConnectionAdapter {
    private SimpleDB db;
    private Transaction currentTx;
    private Planner planner;
+   private boolean asyncCommit;
+   private boolean readOnly = false;
 
    /**
     * Creates a connection
     * and begins a new transaction for it.
+    * @param asyncCommit true if the transactions commit asynchronously
     * @throws RemoteException
     */
-   public EmbeddedConnection(SimpleDB db) {
+   public EmbeddedConnection(SimpleDB db, boolean asyncCommit) {
       this.db = db;
-      currentTx = db.newTx();
+      this.asyncCommit = asyncCommit;
+      currentTx = newTx();
       planner = db.planner();
    }
 
@@ -46,7 +50,7 @@ class EmbeddedConnection extends ConnectionAdapter {
     */
    public void commit() throws SQLException {
       currentTx.commit();
-      currentTx = db.newTx();
+      currentTx = newTx();
    }
 
    /**
@@ -54,7 +58,23 @@ class EmbeddedConnection extends ConnectionAdapter {
     */
    public void rollback() throws SQLException {
       currentTx.rollback();
-      currentTx = db.newTx();
+      currentTx = newTx();
+   }
+
+   /**
+    * Specifies whether the transactions of the connection
+    * are read-only, starting with the current one.
+    * Since each statement ends its transaction,
+    * the current transaction has not read anything yet.
+    * @see simpledb.tx.Transaction#setReadOnly(boolean)
+    */
+   public void setReadOnly(boolean readOnly) throws SQLException {
+      this.readOnly = readOnly;
+      currentTx.setReadOnly(readOnly);
+   }
+
+   public boolean isReadOnly() throws SQLException {
+      return readOnly;
    }
 
    /**
@@ -65,5 +85,12 @@ class EmbeddedConnection extends ConnectionAdapter {
    Transaction getTransaction() {  
       return currentTx;
    }
+
+   private Transaction newTx() {
+      Transaction tx = db.newTx();
+      tx.setAsyncCommit(asyncCommit);
+      tx.setReadOnly(readOnly);
+      return tx;
+   }
 }
 
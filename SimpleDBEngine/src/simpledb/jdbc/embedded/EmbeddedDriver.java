@@ -14,12 +14,15 @@ public class EmbeddedDriver extends DriverAdapter {
    /**
     * Creates a new RemoteConnectionImpl object and 
     * returns it.
-    * @see simpledb.jdbc.network.RemoteDriver#connect()
+    * If the property "asynccommit" is "true", the transactions
+    * of the connection commit asynchronously.
+    * @see simpledb.jdbc.network.RemoteDriver#connect(boolean)
     */
    public EmbeddedConnection connect(String url, Properties p) throws SQLException {
       String dbname = url.replace("jdbc:simpledb:", "");
       SimpleDB db = new SimpleDB(dbname);
-      return new EmbeddedConnection(db);
+      boolean async = (p != null) && Boolean.parseBoolean(p.getProperty("asynccommit"));
+      return new EmbeddedConnection(db, async);
    }
 }
 
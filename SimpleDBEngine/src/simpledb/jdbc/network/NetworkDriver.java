@@ -21,8 +21,8 @@ public class NetworkDriver extends DriverAdapter {
     * This stub is wrapped in a SimpleConnection object
     * and is returned. 
     * <P>
-    * The current implementation of this method ignores the 
-    * properties argument.
+    * The only property is "asynccommit"; if it is "true", the transactions
+    * of the connection commit asynchronously.
     * @see java.sql.Driver#connect(java.lang.String, Properties)
     */
    public Connection connect(String url, Properties prop) throws SQLException {
@@ -30,7 +30,8 @@ public class NetworkDriver extends DriverAdapter {
          String host = url.replace("jdbc:simpledb://", "");  //assumes no port specified
          Registry reg = LocateRegistry.getRegistry(host, 1099);
          RemoteDriver rdvr = (RemoteDriver) reg.lookup("simpledb");
-         RemoteConnection rconn = rdvr.connect();
+         boolean async = (prop != null) && Boolean.parseBoolean(prop.getProperty("asynccommit"));
+         RemoteConnection rconn = rdvr.connect(async);
          return new NetworkConnection(rconn);
       }
       catch (Exception e) {
@@ -16,15 +16,19 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
    private SimpleDB db;
    private Transaction currentTx;
    private Planner planner;
+   private boolean asyncCommit;
+   private boolean readOnly = false;
    
    /**
     * Creates a remote connection
     * and begins a new transaction for it.
+    * @param asyncCommit true if the transactions commit asynchronously
     * @throws RemoteException
     */
-   RemoteConnectionImpl(SimpleDB db) throws RemoteException {
+   RemoteConnectionImpl(SimpleDB db, boolean asyncCommit) throws RemoteException {
       this.db = db;
-      currentTx = db.newTx();
+      this.asyncCommit = asyncCommit;
+      currentTx = newTx();
       planner = db.planner();
    }
    
@@ -45,6 +49,20 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
       currentTx.commit();
    }
    
+   /**
+    * Specifies whether the transactions of the connection
+    * are read-only, starting with the current one.
+    * @see simpledb.jdbc.network.RemoteConnection#setReadOnly(boolean)
+    */
+   public void setReadOnly(boolean readOnly) throws RemoteException {
+      this.readOnly = readOnly;
+      currentTx.setReadOnly(readOnly);
+   }
+   
+   public boolean isReadOnly() throws RemoteException {
+      return readOnly;
+   }
+   
 // The following methods are used by the server-side classes.
    
    /**
@@ -55,6 +73,13 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
    Transaction getTransaction() {  
       return currentTx;
    }
+
+   private Transaction newTx() {
+      Transaction tx = db.newTx();
+      tx.setAsyncCommit(asyncCommit);
+      tx.setReadOnly(readOnly);
+      return tx;
+   }
    
    /**
     * Commits the current transaction,
@@ -62,7 +87,7 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
     */
    void commit() {
       currentTx.commit();
-      currentTx = db.newTx();
+      currentTx = newTx();
    }
    
    /**
@@ -71,7 +96,7 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
     */
    void rollback() {
       currentTx.rollback();
-      currentTx = db.newTx();
+      currentTx = newTx();
    }
 }
 
@@ -5,11 +5,11 @@ import java.rmi.*;
 /**
  * The RMI remote interface corresponding to Driver.
  * The method is similar to that of Driver, 
- * except that it takes no arguments and
- * throws RemoteExceptions instead of SQLExceptions.
+ * except that it takes only the asynchronous commit option
+ * and throws RemoteExceptions instead of SQLExceptions.
  * @author Edward Sciore
  */
 public interface RemoteDriver extends Remote {
-   public RemoteConnection connect() throws RemoteException;
+   public RemoteConnection connect(boolean asynccommit) throws RemoteException;
 }
 
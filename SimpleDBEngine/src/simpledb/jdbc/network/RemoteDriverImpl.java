@@ -19,10 +19,10 @@ public class RemoteDriverImpl extends UnicastRemoteObject implements RemoteDrive
    /**
     * Creates a new RemoteConnectionImpl object and 
     * returns it.
-    * @see simpledb.jdbc.network.RemoteDriver#connect()
+    * @see simpledb.jdbc.network.RemoteDriver#connect(boolean)
     */
-   public RemoteConnection connect() throws RemoteException {
-      return new RemoteConnectionImpl(db);
+   public RemoteConnection connect(boolean asynccommit) throws RemoteException {
+      return new RemoteConnectionImpl(db, asynccommit);
    }
 }
 
@@ -0,0 +1,92 @@
+package simpledb.log;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import simpledb.file.*;
+
+/**
+ * The dictionary that numbers the files mentioned by log records,
+ * so that a record can refer to a file by a small id
+ * instead of by its name.
+ * The names are stored in order of their ids in a file of their own,
+ * which is never truncated with the log.
+ * Each block of that file holds the number of names in it,
+ * followed by the names.
+ * A new name is forced to disk before its id is returned,
+ * so that no log record can reach the disk before the name it uses.
+ */
+class FileDictionary {
+   private FileMgr fm;
+   private String filename;
+   private List<String> names = new ArrayList<>();
+   private Map<String,Integer> ids = new ConcurrentHashMap<>();
+   private Page page;
+   private BlockId blk;
+   private int count, pos;
+
+   FileDictionary(FileMgr fm, String filename) {
+      this.fm = fm;
+      this.filename = filename;
+      page = new Page(new byte[fm.blockSize()]);
+      int size = fm.length(filename);
+      for (int b=0; b<size; b++) {
+         blk = new BlockId(filename, b);
+         fm.read(blk, page);
+         count = page.getInt(0);
+         pos = Integer.BYTES;
+         for (int i=0; i<count; i++) {
+            String name = page.getString(pos);
+            ids.put(name, names.size());
+            names.add(name);
+            pos += Page.maxLength(name.length());
+         }
+      }
+      if (size == 0)
+         moveToNewBlock();
+   }
+
+   /**
+    * Returns the id of the specified file,
+    * adding the file to the dictionary if necessary.
+    * @param name the name of the file
+    * @return the id of that file
+    */
+   int id(String name) {
+      Integer id = ids.get(name);
+      return (id != null) ? id : add(name);
+   }
+
+   /**
+    * Returns the name of the file with the specified id.
+    * @param id the id of a file
+    * @return the name of that file
+    */
+   synchronized String name(int id) {
+      return names.get(id);
+   }
+
+   private synchronized int add(String name) {
+      Integer id = ids.get(name);
+      if (id != null)
+         return id;
+      int needed = Page.maxLength(name.length());
+      if (pos + needed > fm.blockSize())
+         moveToNewBlock();
+      page.setString(pos, name);
+      pos += needed;
+      count++;
+      page.setInt(0, count);
+      fm.write(blk, page);
+      fm.force(filename);
+      names.add(name);
+      ids.put(name, names.size() - 1);
+      return names.size() - 1;
+   }
+
+   private void moveToNewBlock() {
+      blk = fm.append(filename);
+      count = 0;
+      pos = Integer.BYTES;
+      page.setInt(0, count);
+   }
+}
@@ -5,12 +5,15 @@ import simpledb.file.*;
 
 /**
  * A class that provides the ability to move through the
- * records of the log file in reverse order.
+ * records of the log file in reverse order,
+ * across its segments.
  * 
  * @author Edward Sciore
  */
 class LogIterator implements Iterator<byte[]> {
    private FileMgr fm;
+   private LogMgr lm;
+   private int blknum;
    private BlockId blk;
    private Page p;
    private int currentpos;
@@ -20,9 +23,11 @@ class LogIterator implements Iterator<byte[]> {
     * Creates an iterator for the records in the log file,
     * positioned after the last log record.
     */
-   public LogIterator(FileMgr fm, BlockId blk) {
+   public LogIterator(FileMgr fm, LogMgr lm, int blknum) {
       this.fm = fm;
-      this.blk = blk;
+      this.lm = lm;
+      this.blknum = blknum;
+      blk = lm.blockFor(blknum);
       byte[] b = new byte[fm.blockSize()];
       p = new Page(b);
       moveToBlock(blk);
@@ -34,7 +39,7 @@ class LogIterator implements Iterator<byte[]> {
     * @return true if there is an earlier record
     */
    public boolean hasNext() {
-      return currentpos<fm.blockSize() || blk.number()>0;
+      return currentpos<fm.blockSize() || blknum>lm.firstBlock();
    }
 
    /**
@@ -46,7 +51,8 @@ class LogIterator implements Iterator<byte[]> {
     */
    public byte[] next() {
       if (currentpos == fm.blockSize()) {
-         blk = new BlockId(blk.fileName(), blk.number()-1);
+         blknum--;
+         blk = lm.blockFor(blknum);
          moveToBlock(blk);
       }
       byte[] rec = p.getBytes(currentpos);
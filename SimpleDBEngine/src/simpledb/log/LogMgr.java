@@ -1,41 +1,187 @@
 package simpledb.log;
 
-import java.util.Iterator;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.concurrent.locks.*;
 import simpledb.file.*;
 
 /**
- * The log manager, which is responsible for 
- * writing log records into a log file. The tail of 
- * the log is kept in a bytebuffer, which is flushed
- * to disk when needed. 
+ * The log manager, which is responsible for
+ * writing log records into a log file. The tail of
+ * the log is kept in a ring of pages, which a
+ * log writer thread writes to disk.
+ * <p>
+ * The log is split into segment files of a fixed number
+ * of blocks, named after the log file followed by the
+ * number of the segment, such as <code>simpledb.log.0</code>.
+ * Blocks are numbered across the segments, so that block
+ * <i>b</i> is block <i>b</i> mod <i>n</i> of segment <i>b</i> / <i>n</i>.
+ * Clients hold the records that they may still need to read,
+ * and the writer deletes the segments whose records are
+ * all older than every record held.
+ * <p>
+ * Appending a record only copies it into the current page
+ * of the ring. When the page is full, it is handed to the
+ * writer and the next page of the ring becomes current, so an
+ * append only waits for I/O when every page of the ring is full.
+ * The writer writes the full pages in order and, when a client
+ * asks for a flush, also a copy of the current page.
+ * All the pages of a round are made durable by a single force,
+ * so the commits of concurrent transactions are grouped.
+ * The writer can wait for a short commit delay before
+ * copying the current page, so that more commits join the group.
+ * <p>
+ * A client can also ask for a lazy flush, which does not wait:
+ * the writer flushes the record within the lazy flush delay.
+ * Since full pages are written as soon as they are handed
+ * to the writer, a crash can only lose the lazily flushed
+ * records of the current page and of that delay.
  * @author Edward Sciore
  */
 public class LogMgr {
    private FileMgr fm;
    private String logfile;
-   private Page logpage;
-   private BlockId currentblk;
+   private int segmentblocks;
+   private int numpages;
+   private Page[] ring;
+   private byte[][] ringbytes;
+   private int[] blknums;          // the number of the block in each page
+   private int[] lastLSNs;
+   private Page flushpage;
+   private byte[] flushbytes;
+   private long filled = 0;       // the number of pages handed to the writer
+   private long written = 0;      // the number of those pages it has written
    private int latestLSN = 0;
+   private int sealedLSN = 0;     // the last LSN of the pages handed to the writer
+   private int requestedLSN = 0;
+   private int lazyLSN = 0;
+   private long lazyDeadline;
    private int lastSavedLSN = 0;
+   private long commitDelay = 0;
+   private long lazyDelay = TimeUnit.MILLISECONDS.toNanos(10);
+   private long flushes = 0;
+   private int firstSegment;
+   private TreeMap<Integer,Integer> segmentStartLSNs = new TreeMap<>();
+   private TreeMap<Integer,Integer> blockStartLSNs = new TreeMap<>(); // LSN -> block
+   private TreeMap<Integer,Integer> holds = new TreeMap<>();
+   private TreeMap<Integer,List<Runnable>> whenSaved = new TreeMap<>();
+   private FileDictionary dictionary;
+   private RuntimeException failure;
+   private Lock lock = new ReentrantLock();
+   private Condition work = lock.newCondition();
+   private Condition space = lock.newCondition();
+   private Condition saved = lock.newCondition();
 
    /**
-    * Creates the manager for the specified log file.
-    * If the log file does not yet exist, it is created
-    * with an empty first block.
+    * Creates the manager for the specified log file,
+    * with a ring of 8 pages and segments of 1024 blocks.
     * @param FileMgr the file manager
     * @param logfile the name of the log file
     */
    public LogMgr(FileMgr fm, String logfile) {
+      this(fm, logfile, 8, 1024);
+   }
+
+   /**
+    * Creates the manager for the specified log file,
+    * and starts its log writer thread.
+    * If the log file does not yet exist, its first segment
+    * is created with an empty first block.
+    * The records of the log segments written before
+    * are held until {@link #release(int)} is called for LSN 0,
+    * which the recovery manager does after recovery.
+    * A log written by earlier versions of SimpleDB, as a single
+    * file with the name of the log, holds records in another format,
+    * which cannot be recovered; the manager refuses to start
+    * while that file is not empty, rather than ignore its records.
+    * @param FileMgr the file manager
+    * @param logfile the name of the log file
+    * @param numpages the number of pages in the ring, at least 2
+    * @param segmentblocks the number of blocks in a segment
+    */
+   public LogMgr(FileMgr fm, String logfile, int numpages, int segmentblocks) {
       this.fm = fm;
       this.logfile = logfile;
-      byte[] b = new byte[fm.blockSize()];
-      logpage = new Page(b);
-      int logsize = fm.length(logfile);
+      this.segmentblocks = segmentblocks;
+      this.numpages = Math.max(2, numpages);
+      ring = new Page[this.numpages];
+      ringbytes = new byte[this.numpages][];
+      blknums = new int[this.numpages];
+      lastLSNs = new int[this.numpages];
+      for (int i=0; i<this.numpages; i++) {
+         ringbytes[i] = new byte[fm.blockSize()];
+         ring[i] = new Page(ringbytes[i]);
+      }
+      flushbytes = new byte[fm.blockSize()];
+      flushpage = new Page(flushbytes);
+      if (fm.file(logfile).length() > 0)
+         throw new RuntimeException("the log file " + logfile
+               + " was written by an earlier version of SimpleDB;"
+               + " recover the database with that version, then delete the file");
+      List<Integer> segments = new ArrayList<>();
+      for (String filename : fm.files(logfile + "."))
+         try {
+            segments.add(Integer.parseInt(filename.substring(logfile.length() + 1)));
+         }
+         catch (NumberFormatException e) {
+            // not a segment of this log
+         }
+      if (segments.isEmpty())
+         segments.add(0);
+      else
+         holds.put(0, 1);  // the earlier records count as LSN 0
+      firstSegment = Collections.min(segments);
+      int lastSegment = Collections.max(segments);
+      for (int seg : segments)
+         segmentStartLSNs.put(seg, 1);
+      int logsize = fm.length(segmentName(lastSegment));
       if (logsize == 0)
-         currentblk = appendNewBlock();
+         blknums[0] = appendNewBlock(lastSegment);
       else {
-         currentblk = new BlockId(logfile, logsize-1);
-         fm.read(currentblk, logpage);
+         blknums[0] = lastSegment * segmentblocks + logsize - 1;
+         fm.read(blockFor(blknums[0]), ring[0]);
+      }
+      // the records of earlier sessions in the block precede LSN 1
+      blockStartLSNs.put(1 - recordCount(ring[0]), blknums[0]);
+      dictionary = new FileDictionary(fm, logfile + "files");
+      Thread t = new Thread(this::writeLoop, "simpledb-logwriter");
+      t.setDaemon(true);
+      t.start();
+   }
+
+   /**
+    * Sets how long the log writer waits before
+    * copying the current page for a flush, so that concurrent
+    * commits can join its group.
+    * A delay trades commit latency for fewer forced writes,
+    * and only pays off when many transactions commit at once.
+    * @param micros the delay in microseconds, or 0 for none
+    */
+   public void setCommitDelay(long micros) {
+      commitDelay = TimeUnit.MICROSECONDS.toNanos(micros);
+   }
+
+   /**
+    * Sets the longest time that a lazily flushed
+    * log record can stay in memory.
+    * @param millis the lazy flush delay in milliseconds
+    */
+   public void setLazyFlushDelay(long millis) {
+      lazyDelay = TimeUnit.MILLISECONDS.toNanos(millis);
+   }
+
+   /**
+    * Returns the number of times the log has been forced to disk.
+    * @return the number of log flushes
+    */
+   public long flushes() {
+      lock.lock();
+      try {
+         return flushes;
+      }
+      finally {
+         lock.unlock();
       }
    }
 
@@ -43,21 +189,243 @@ public class LogMgr {
     * Ensures that the log record corresponding to the
     * specified LSN has been written to disk.
     * All earlier log records will also be written to disk.
+    * The method asks the log writer for the record,
+    * and waits until the writer has forced it to disk.
     * @param lsn the LSN of a log record
     */
    public void flush(int lsn) {
-      if (lsn >= lastSavedLSN)
-         flush();
+      lock.lock();
+      try {
+         if (lsn <= lastSavedLSN)
+            return;
+         if (lsn > requestedLSN) {
+            requestedLSN = lsn;
+            work.signal();
+         }
+         while (lsn > lastSavedLSN) {
+            checkFailure();
+            saved.awaitUninterruptibly();
+         }
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Asks the log writer to write the log record corresponding
+    * to the specified LSN to disk within the lazy flush delay,
+    * and returns without waiting for it.
+    * @param lsn the LSN of a log record
+    */
+   public void flushLazily(int lsn) {
+      lock.lock();
+      try {
+         if (lsn <= lastSavedLSN || lsn <= lazyLSN)
+            return;
+         if (lazyLSN <= lastSavedLSN) {
+            lazyDeadline = System.nanoTime() + lazyDelay;
+            work.signal();
+         }
+         lazyLSN = lsn;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Runs the action once the log record with the specified LSN
+    * is on disk: at once if it already is, and otherwise in the
+    * log writer, after the write that saves it and before the
+    * segments that are no longer held are deleted.
+    * The action runs while holding the lock of the log manager,
+    * so it must be short and must not wait.
+    * A transaction that commits asynchronously releases
+    * its hold on the log this way.
+    * @param lsn the LSN of a log record
+    * @param action the action to run
+    */
+   public void whenSaved(int lsn, Runnable action) {
+      lock.lock();
+      try {
+         if (lsn <= lastSavedLSN)
+            action.run();
+         else
+            whenSaved.computeIfAbsent(lsn, k -> new ArrayList<>()).add(action);
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Returns the LSN of the most recently appended log record.
+    * @return the latest LSN
+    */
+   public int latestLSN() {
+      lock.lock();
+      try {
+         return latestLSN;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Returns the id of the specified file in the dictionary
+    * of the log, which is stored in a file of its own.
+    * Log records can refer to a file by its id.
+    * @param filename the name of a file
+    * @return the id of that file
+    */
+   public int fileId(String filename) {
+      return dictionary.id(filename);
+   }
+
+   /**
+    * Returns the name of the file with the specified id.
+    * @param id an id returned by {@link #fileId(String)}
+    * @return the name of the file
+    */
+   public String fileName(int id) {
+      return dictionary.name(id);
+   }
+
+   /**
+    * Holds the records from the next one appended onwards,
+    * so that their segments are not deleted
+    * until the hold is released.
+    * A transaction holds the log from its start record.
+    * @return the LSN of the next log record
+    */
+   public int hold() {
+      lock.lock();
+      try {
+         int lsn = latestLSN + 1;
+         holds.merge(lsn, 1, Integer::sum);
+         return lsn;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Holds the records from the specified one onwards.
+    * The record must have been appended during this session,
+    * and still be held by another client.
+    * @param lsn the LSN of the first record to hold
+    * @return the LSN of that record
+    */
+   public int hold(int lsn) {
+      lock.lock();
+      try {
+         holds.merge(lsn, 1, Integer::sum);
+         return lsn;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Releases a hold on the log.
+    * The segments that are no longer held are deleted
+    * by the log writer after its next write.
+    * @param lsn the LSN returned by {@link #hold()}, or 0
+    * for the records of the earlier segments
+    */
+   public void release(int lsn) {
+      lock.lock();
+      try {
+         holds.computeIfPresent(lsn, (k, n) -> (n == 1) ? null : n-1);
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Returns the log record with the specified LSN,
+    * which must have been appended during this session.
+    * The record is read from the ring if its block is
+    * still there, and otherwise from the disk.
+    * @param lsn the LSN of a log record
+    * @return the bytes of the record
+    */
+   public byte[] read(int lsn) {
+      byte[] b = new byte[fm.blockSize()];
+      Page p = new Page(b);
+      int firstLSN, blknum;
+      boolean inRing;
+      lock.lock();
+      try {
+         Map.Entry<Integer,Integer> e = blockStartLSNs.floorEntry(lsn);
+         firstLSN = e.getKey();
+         blknum = e.getValue();
+         int behind = blknums[current()] - blknum;
+         inRing = (behind <= filled - written);
+         if (inRing) {
+            int i = (int) ((filled - behind) % numpages);
+            System.arraycopy(ringbytes[i], 0, b, 0, b.length);
+         }
+      }
+      finally {
+         lock.unlock();
+      }
+      if (!inRing)
+         fm.read(blockFor(blknum), p);
+      // the records are stored from the newest to the oldest
+      int pos = p.getInt(0);
+      for (int n=recordCount(p)-1; n>lsn-firstLSN; n--)
+         pos += Integer.BYTES + p.getInt(pos);
+      return p.getBytes(pos);
    }
 
    public Iterator<byte[]> iterator() {
-      flush();
-      return new LogIterator(fm, currentblk);
+      int lsn;
+      int blknum;
+      lock.lock();
+      try {
+         lsn = latestLSN;
+         blknum = blknums[current()];
+      }
+      finally {
+         lock.unlock();
+      }
+      flush(lsn);
+      return new LogIterator(fm, this, blknum);
+   }
+
+   /**
+    * Returns the block of the specified number,
+    * in the segment that contains it.
+    * @param blknum the number of a block across the segments
+    * @return the block within its segment file
+    */
+   BlockId blockFor(int blknum) {
+      return new BlockId(segmentName(blknum / segmentblocks), blknum % segmentblocks);
+   }
+
+   /**
+    * Returns the number of the earliest block of the log.
+    * @return the number of the first block of the first segment
+    */
+   int firstBlock() {
+      lock.lock();
+      try {
+         return firstSegment * segmentblocks;
+      }
+      finally {
+         lock.unlock();
+      }
    }
 
    /**
-    * Appends a log record to the log buffer. 
-    * The record consists of an arbitrary array of bytes. 
+    * Appends a log record to the log buffer.
+    * The record consists of an arbitrary array of bytes.
     * Log records are written right to left in the buffer.
     * The size of the record is written before the bytes.
     * The beginning of the buffer contains the location
@@ -67,38 +435,253 @@ public class LogMgr {
     * @param logrec a byte buffer containing the bytes.
     * @return the LSN of the final value
     */
-   public synchronized int append(byte[] logrec) {
-      int boundary = logpage.getInt(0);
-      int recsize = logrec.length;
-      int bytesneeded = recsize + Integer.BYTES;
-      if (boundary - bytesneeded < Integer.BYTES) { // the log record doesn't fit,
-         flush();        // so move to the next block.
-         currentblk = appendNewBlock();
-         boundary = logpage.getInt(0);
+   public int append(byte[] logrec) {
+      return append(lsn -> logrec);
+   }
+
+   /**
+    * Appends a log record whose bytes depend on the LSN
+    * that the record will have, such as a record that refers to
+    * earlier records by their distance from it.
+    * The function is called again if other records
+    * were appended while waiting for a page of the ring.
+    * @param logrec a function returning the bytes of the record for its LSN
+    * @return the LSN of the record
+    */
+   public int append(IntFunction<byte[]> logrec) {
+      lock.lock();
+      try {
+         byte[] rec = logrec.apply(latestLSN + 1);
+         Page logpage = ring[current()];
+         int boundary = logpage.getInt(0);
+         int bytesneeded = rec.length + Integer.BYTES;
+         while (boundary - bytesneeded < Integer.BYTES) { // the log record doesn't fit,
+            checkFailure();
+            if (filled + 1 - written >= numpages) {
+               space.awaitUninterruptibly(); // so wait for a page of the ring,
+               rec = logrec.apply(latestLSN + 1);
+               bytesneeded = rec.length + Integer.BYTES;
+            }
+            else
+               moveToNextPage();             // and move to the next block.
+            logpage = ring[current()];
+            boundary = logpage.getInt(0);
+         }
+         int recpos = boundary - bytesneeded;
+
+         logpage.setBytes(recpos, rec);
+         logpage.setInt(0, recpos); // the new boundary
+         latestLSN += 1;
+         return latestLSN;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Initialize the bytebuffer and append it
+    * to the specified segment, which is empty.
+    */
+   private int appendNewBlock(int segment) {
+      BlockId blk = fm.append(segmentName(segment));
+      ring[0].setInt(0, fm.blockSize());
+      fm.write(blk, ring[0]);
+      return segment * segmentblocks;
+   }
+
+   private String segmentName(int segment) {
+      return logfile + "." + segment;
+   }
+
+   /**
+    * Returns the position in the ring of the current page.
+    */
+   private int current() {
+      return (int) (filled % numpages);
+   }
+
+   /**
+    * Hand the current page to the log writer, and
+    * make the next page of the ring the current page,
+    * for the block after the current one.
+    * The caller holds the lock, and the next page is free.
+    */
+   private void moveToNextPage() {
+      int prev = current();
+      lastLSNs[prev] = latestLSN;
+      sealedLSN = latestLSN;
+      filled++;
+      int next = current();
+      blknums[next] = blknums[prev] + 1;
+      if (blknums[next] % segmentblocks == 0)
+         segmentStartLSNs.put(blknums[next] / segmentblocks, latestLSN + 1);
+      blockStartLSNs.put(latestLSN + 1, blknums[next]);
+      ring[next].setInt(0, fm.blockSize());
+      work.signal();
+   }
+
+   /**
+    * Returns the number of records in the specified log page.
+    */
+   private int recordCount(Page p) {
+      int n = 0;
+      for (int pos=p.getInt(0); pos<fm.blockSize(); pos+=Integer.BYTES+p.getInt(pos))
+         n++;
+      return n;
+   }
+
+   private void checkFailure() {
+      if (failure != null)
+         throw new RuntimeException("cannot write the log file " + logfile, failure);
+   }
+
+   /**
+    * The body of the log writer thread.
+    * Each round writes the full pages handed to the writer,
+    * followed by a copy of the current page if a client
+    * has asked for one of its records,
+    * and then forces the written segments once.
+    * It then deletes the segments that are no longer held.
+    */
+   private void writeLoop() {
+      while (true) {
+         long first, last;
+         BlockId copyblk = null;
+         int savedLSN;
+         List<String> obsolete;
+         lock.lock();
+         try {
+            awaitWork();
+            if (commitDelay > 0 && requestedLSN > sealedLSN)
+               awaitCommitDelay();
+            first = written;
+            last = filled;
+            savedLSN = (last > first) ? lastLSNs[(int) ((last-1) % numpages)] : lastSavedLSN;
+            if (requestedLSN > sealedLSN) {
+               System.arraycopy(ringbytes[current()], 0, flushbytes, 0, flushbytes.length);
+               copyblk = blockFor(blknums[current()]);
+               savedLSN = latestLSN;
+            }
+         }
+         finally {
+            lock.unlock();
+         }
+
+         try {
+            Set<String> segments = new LinkedHashSet<>();
+            for (long n=first; n<last; n++) {
+               int i = (int) (n % numpages);
+               BlockId blk = blockFor(blknums[i]);
+               fm.write(blk, ring[i]);
+               segments.add(blk.fileName());
+            }
+            if (copyblk != null) {
+               fm.write(copyblk, flushpage);
+               segments.add(copyblk.fileName());
+            }
+            for (String filename : segments)
+               fm.force(filename);
+         }
+         catch (RuntimeException e) {
+            lock.lock();
+            try {
+               failure = e;
+               space.signalAll();
+               saved.signalAll();
+            }
+            finally {
+               lock.unlock();
+            }
+            return;
+         }
+
+         lock.lock();
+         try {
+            written = last;
+            lastSavedLSN = Math.max(lastSavedLSN, savedLSN);
+            flushes++;
+            space.signalAll();
+            saved.signalAll();
+            while (!whenSaved.isEmpty() && whenSaved.firstKey() <= lastSavedLSN)
+               for (Runnable action : whenSaved.pollFirstEntry().getValue())
+                  action.run();
+            obsolete = truncate();
+         }
+         finally {
+            lock.unlock();
+         }
+         for (String filename : obsolete)
+            fm.delete(filename);
       }
-      int recpos = boundary - bytesneeded;
+   }
 
-      logpage.setBytes(recpos, logrec);
-      logpage.setInt(0, recpos); // the new boundary
-      latestLSN += 1;
-      return latestLSN;
+   /**
+    * Removes the segments whose records are older than
+    * every held record from the log, and returns their names
+    * so that the caller can delete them after releasing the lock.
+    * The segment of the oldest page that has not been written,
+    * which may be the current page, is never removed,
+    * since writing the page would create the segment again.
+    * The caller holds the lock.
+    */
+   private List<String> truncate() {
+      int oldest = holds.isEmpty() ? latestLSN + 1 : holds.firstKey();
+      int unwrittenSegment = blknums[(int) (written % numpages)] / segmentblocks;
+      List<String> obsolete = new ArrayList<>();
+      while (firstSegment < unwrittenSegment
+             && segmentStartLSNs.get(firstSegment + 1) <= oldest) {
+         segmentStartLSNs.remove(firstSegment);
+         obsolete.add(segmentName(firstSegment));
+         firstSegment++;
+      }
+      int firstBlock = firstSegment * segmentblocks;
+      while (blockStartLSNs.firstEntry().getValue() < firstBlock)
+         blockStartLSNs.pollFirstEntry();
+      return obsolete;
    }
 
    /**
-    * Initialize the bytebuffer and append it to the log file.
+    * Wait until there are full pages to write, or records to flush,
+    * either because a client is waiting for them or because
+    * their lazy flush delay has expired.
+    * The caller holds the lock.
     */
-   private BlockId appendNewBlock() {
-      BlockId blk = fm.append(logfile);     
-      logpage.setInt(0, fm.blockSize());
-      fm.write(blk, logpage);
-      return blk;
+   private void awaitWork() {
+      while (written == filled && requestedLSN <= lastSavedLSN) {
+         if (lazyLSN <= lastSavedLSN)
+            work.awaitUninterruptibly();
+         else {
+            long remaining = lazyDeadline - System.nanoTime();
+            if (remaining <= 0)
+               requestedLSN = Math.max(requestedLSN, lazyLSN);
+            else {
+               try {
+                  work.awaitNanos(remaining);
+               }
+               catch (InterruptedException e) {
+                  // the writer is a daemon and is never interrupted
+               }
+            }
+         }
+      }
    }
 
    /**
-    * Write the buffer to the log file.
+    * Wait for the commit delay, letting clients append meanwhile.
+    * The caller holds the lock.
     */
-   private void flush() {
-      fm.write(currentblk, logpage);
-      lastSavedLSN = latestLSN;
+   private void awaitCommitDelay() {
+      long deadline = System.nanoTime() + commitDelay;
+      long remaining = commitDelay;
+      while (remaining > 0) {
+         try {
+            work.awaitNanos(remaining);
+         }
+         catch (InterruptedException e) {
+            // the writer is a daemon and is never interrupted
+         }
+         remaining = deadline - System.nanoTime();
+      }
    }
 }
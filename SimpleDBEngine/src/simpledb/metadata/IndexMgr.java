@@ -55,6 +55,8 @@ class IndexMgr {
       ts.setString("fieldname", fldname);
       ts.setString("indextype", "hash");
       ts.close();
+      // create the files of the index now, since read-only transactions cannot
+      getIndexInfo(tblname, tx).get(fldname).open().close();
    }
    
    /**
@@ -76,6 +78,8 @@ class IndexMgr {
       ts.setString("fieldname", fldname);
       ts.setString("indextype", indexType);
       ts.close();
+      // create the files of the index now, since read-only transactions cannot
+      getIndexInfo(tblname, tx).get(fldname).open().close();
    }
    
    /**
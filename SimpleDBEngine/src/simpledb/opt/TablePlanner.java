@@ -17,7 +17,7 @@ import simpledb.plan.*;
  * @author Edward Sciore
  */
 class TablePlanner {
-   private TablePlan myplan;
+   private TablePlan myplan, scanplan;
    private Predicate mypred;
    private Schema myschema;
    private Map<String,IndexInfo> indexes;
@@ -37,6 +37,7 @@ class TablePlanner {
       this.mypred  = mypred;
       this.tx  = tx;
       myplan   = new TablePlan(tx, tblname, mdm);
+      scanplan = myplan.lockingTable();
       myschema = myplan.schema();
       indexes  = mdm.getIndexInfo(tblname, tx);
    }
@@ -49,7 +50,7 @@ class TablePlanner {
    public Plan makeSelectPlan() {
       Plan p = makeIndexSelect();
       if (p == null)
-         p = myplan;
+         p = scanplan;
       return addSelectPred(p);
    }
    
@@ -87,7 +88,7 @@ class TablePlanner {
     * @return a product plan of the specified plan and this table
     */
    public Plan makeProductPlan(Plan current) {
-      Plan p = addSelectPred(myplan);
+      Plan p = addSelectPred(scanplan);
       return new MultibufferProductPlan(tx, current, p);
    }
    
@@ -125,7 +126,7 @@ class TablePlanner {
          if (currfield != null && currsch.hasField(currfield)) {
             Operator opr = mypred.getMatchedOperatorByTermFieldNames(fldname, currfield);
             Plan nestedLoopJoinPlan = 
-               new NestedLoopPlan(tx, current, myplan, currfield, fldname, opr);
+               new NestedLoopPlan(tx, current, scanplan, currfield, fldname, opr);
             nestedLoopJoinPlan = addSelectPred(nestedLoopJoinPlan);
             return addJoinPred(nestedLoopJoinPlan, currsch);
          }
@@ -138,7 +139,7 @@ class TablePlanner {
          String currfield = mypred.equatesWithField(fldname);
          if (currfield != null && currsch.hasField(currfield)) {
             Plan hashJoinPlan = 
-               new HashJoinPlan(tx, current, myplan, currfield, fldname);
+               new HashJoinPlan(tx, current, scanplan, currfield, fldname);
             hashJoinPlan = addSelectPred(hashJoinPlan);
             return addJoinPred(hashJoinPlan, currsch);
          }
@@ -150,7 +151,7 @@ class TablePlanner {
       for (String fldname : myschema.fields()) {
          String currfield = mypred.equatesWithField(fldname);
          if (currfield != null && currsch.hasField(currfield)) {
-            Plan mergeJoinPlan = new MergeJoinPlan(tx, current, myplan, currfield, fldname);
+            Plan mergeJoinPlan = new MergeJoinPlan(tx, current, scanplan, currfield, fldname);
             mergeJoinPlan = addSelectPred(mergeJoinPlan);
             Plan result = addJoinPred(mergeJoinPlan, currsch);
             return result;
@@ -260,7 +260,7 @@ public class Lexer {
       keywords = Arrays.asList("select", "from", "where", "and",
                                "insert", "into", "values", "delete", "update", "set", 
                                "create", "table", "int", "varchar", "view", "as", "index", "on",
-                               "using", "hash", "btree");
+                               "using", "hash", "btree", "load");
    }
    
    // init operators and singleOprs for matching and eating in the Lexer
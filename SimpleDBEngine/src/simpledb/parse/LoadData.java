@@ -0,0 +1,37 @@
+package simpledb.parse;
+
+/**
+ * Data for the SQL <i>load</i> statement,
+ * which appends the records of a file of comma-separated values
+ * to a table, one record per line, with a value for each field
+ * of the table in the order of its schema.
+ */
+public class LoadData {
+   private String tblname;
+   private String filename;
+   
+   /**
+    * Saves the table name and the name of the file to load.
+    */
+   public LoadData(String tblname, String filename) {
+      this.tblname = tblname;
+      this.filename = filename;
+   }
+   
+   /**
+    * Returns the name of the affected table.
+    * @return the name of the affected table
+    */
+   public String tableName() {
+      return tblname;
+   }
+   
+   /**
+    * Returns the path of the file holding the records,
+    * relative to the database directory.
+    * @return the path of the file
+    */
+   public String fileName() {
+      return filename;
+   }
+}
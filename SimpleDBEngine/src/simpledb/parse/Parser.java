@@ -188,6 +188,8 @@ public class Parser {
          return delete();
       else if (lex.matchKeyword("update"))
          return modify();
+      else if (lex.matchKeyword("load"))
+         return load();
       else
          return create();
    }
@@ -216,6 +218,25 @@ public class Parser {
       return new DeleteData(tblname, pred);
    }
    
+// Method for parsing load commands
+   
+   /**
+    * Parses a statement <i>load into T from 'path'</i>.
+    * The path names a file of comma-separated values in the
+    * database directory, relative to it; the planner refuses
+    * a path that leads outside of the directory, so a client,
+    * possibly a remote one, cannot read other files of the server.
+    * @return the data of the load statement
+    */
+   public LoadData load() {
+      lex.eatKeyword("load");
+      lex.eatKeyword("into");
+      String tblname = lex.eatId();
+      lex.eatKeyword("from");
+      String filename = lex.eatStringConstant();
+      return new LoadData(tblname, filename);
+   }
+   
 // Methods for parsing insert commands
    
    public InsertData insert() {
@@ -33,7 +33,7 @@ public class BasicQueryPlanner implements QueryPlanner {
             plans.add(createPlan(viewdata, tx));
          }
          else
-            plans.add(new TablePlan(tx, tblname, mdm));
+            plans.add(new TablePlan(tx, tblname, mdm).lockingTable());
       }
       
       //Step 2: Create the product of all table plans
@@ -1,9 +1,10 @@
 package simpledb.plan;
 
-import java.util.Iterator;
+import java.util.*;
 import simpledb.tx.Transaction;
 import simpledb.parse.*;
 import simpledb.query.*;
+import simpledb.record.*;
 import simpledb.metadata.MetadataMgr;
 
 /**
@@ -57,6 +58,12 @@ public class BasicUpdatePlanner implements UpdatePlanner {
       return 1;
    }
    
+   public int executeLoad(LoadData data, Transaction tx) {
+      Layout layout = mdm.getLayout(data.tableName(), tx);
+      BulkLoader loader = new BulkLoader(tx, data.tableName(), layout);
+      return loader.load(data.fileName(), Map.of());
+   }
+   
    public int executeCreateTable(CreateTableData data, Transaction tx) {
       mdm.createTable(data.tableName(), data.newSchema(), tx);
       return 0;
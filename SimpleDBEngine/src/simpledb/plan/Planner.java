@@ -30,7 +30,7 @@ public class Planner {
    }
    
    /**
-    * Executes an SQL insert, delete, modify, or
+    * Executes an SQL insert, delete, modify, load, or
     * create statement.
     * The method dispatches to the appropriate method of the
     * supplied update planner,
@@ -55,6 +55,8 @@ public class Planner {
          return uplanner.executeCreateView((CreateViewData)data, tx);
       else if (data instanceof CreateIndexData)
          return uplanner.executeCreateIndex((CreateIndexData)data, tx);
+      else if (data instanceof LoadData)
+         return uplanner.executeLoad((LoadData)data, tx);
       else
          return 0;
    }
@@ -13,6 +13,7 @@ public class TablePlan implements Plan {
    private Transaction tx;
    private Layout layout;
    private StatInfo si;
+   private boolean locksTable = false;
    
    /**
     * Creates a leaf node in the query tree corresponding
@@ -26,12 +27,34 @@ public class TablePlan implements Plan {
       layout = md.getLayout(tblname, tx);
       si = md.getStatInfo(tblname, layout, tx);
    }
+
+   private TablePlan(TablePlan p) {
+      tblname = p.tblname;
+      tx = p.tx;
+      layout = p.layout;
+      si = p.si;
+      locksTable = true;
+   }
+
+   /**
+    * Returns a plan for the same table whose scan locks the whole
+    * table in the mode S once, instead of locking its blocks or
+    * records one by one. Only a query that reads all of the records
+    * should use it, since the lock keeps other transactions from
+    * modifying any of them until the transaction ends.
+    * @return a plan that locks the table
+    */
+   public TablePlan lockingTable() {
+      return new TablePlan(this);
+   }
    
    /**
     * Creates a table scan for this query.
     * @see simpledb.plan.Plan#open()
     */
    public Scan open() {
+      if (locksTable)
+         tx.sLockFile(tblname + ".tbl");
       return new TableScan(tx, tblname, layout);
    }
    
@@ -5,7 +5,7 @@ import simpledb.parse.*;
 
 /**
  * The interface implemented by the planners
- * for SQL insert, delete, and modify statements.
+ * for SQL insert, delete, modify, and load statements.
  * @author Edward Sciore
  */
 public interface UpdatePlanner {
@@ -63,4 +63,16 @@ public interface UpdatePlanner {
     * @return the number of affected records
     */
    public int executeCreateIndex(CreateIndexData data, Transaction tx);
+   
+   /**
+    * Executes the specified load statement, and
+    * returns the number of loaded records.
+    * The records are appended to the table by a
+    * {@link simpledb.record.BulkLoader}, from a file
+    * that must be in the database directory.
+    * @param data the parsed representation of the load statement
+    * @param tx the calling transaction
+    * @return the number of loaded records
+    */
+   public int executeLoad(LoadData data, Transaction tx);
 }
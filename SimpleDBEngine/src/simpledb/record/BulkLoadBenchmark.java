@@ -0,0 +1,70 @@
+package simpledb.record;
+
+import java.io.*;
+import simpledb.server.SimpleDB;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * Compares the time taken and the log records written
+ * to append records to an empty table,
+ * by inserting them one at a time through a table scan,
+ * and by loading them with a bulk loader.
+ * Each method runs in one transaction, which commits at the end.
+ * Usage: BulkLoadBenchmark [records]
+ */
+public class BulkLoadBenchmark {
+   public static void main(String[] args) {
+      int n = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+      PrintStream out = System.out;
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+      SimpleDB db = new SimpleDB("bulkloadbenchmark", 400, 64);
+      System.setOut(out);
+      Schema sch = new Schema();
+      sch.addIntField("id");
+      sch.addStringField("name", 20);
+      sch.addIntField("value");
+      Layout layout = new Layout(sch);
+
+      out.println("method        records/s   log records");
+      run(db, layout, n, false, "warm-up");
+      run(db, layout, n, false, "insert");
+      run(db, layout, n, true, "load");
+   }
+
+   private static void run(SimpleDB db, Layout layout, int n, boolean bulk, String method) {
+      LogMgr lm = db.logMgr();
+      PrintStream out = System.out;
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+      String tblname = method.replace("-", "");
+      Transaction tx = db.newTx();
+      int startLSN = lm.latestLSN();
+      long start = System.nanoTime();
+      if (bulk) {
+         BulkLoader loader = new BulkLoader(tx, tblname, layout);
+         for (int i=0; i<n; i++) {
+            loader.insert();
+            loader.setInt("id", i);
+            loader.setString("name", "name" + i);
+            loader.setInt("value", i % 100);
+         }
+         loader.close();
+      }
+      else {
+         TableScan ts = new TableScan(tx, tblname, layout);
+         for (int i=0; i<n; i++) {
+            ts.insert();
+            ts.setInt("id", i);
+            ts.setString("name", "name" + i);
+            ts.setInt("value", i % 100);
+         }
+         ts.close();
+      }
+      tx.commit();
+      double secs = (System.nanoTime() - start) / 1e9;
+      int logrecs = lm.latestLSN() - startLSN;
+      System.setOut(out);
+      if (!method.equals("warm-up"))
+         out.format("%-10s %12.0f %13d%n", method, n / secs, logrecs);
+   }
+}
@@ -0,0 +1,162 @@
+package simpledb.record;
+
+import static java.sql.Types.INTEGER;
+import java.io.*;
+import java.util.*;
+import simpledb.file.*;
+import simpledb.index.Index;
+import simpledb.query.Constant;
+import simpledb.tx.Transaction;
+
+/**
+ * Appends records to the end of a table, a page at a time.
+ * Unlike a {@link TableScan}, the loader formats each page in memory
+ * and writes it directly to disk when it is full, so the records
+ * go neither through the buffer pool nor through the log.
+ * The transaction only logs where the load began,
+ * holds the end of the file until it finishes,
+ * and forces the file when it commits.
+ * The loaded pages are written sequentially, after the existing
+ * blocks of the table, whose free slots are not reused.
+ */
+public class BulkLoader {
+   private Transaction tx;
+   private Layout layout;
+   private String filename;
+   private Page page;
+   private int blknum;
+   private int currentslot = -1;
+
+   /**
+    * Creates a loader for the specified table.
+    * @param tx the loading transaction
+    * @param tblname the name of the table
+    * @param layout the layout of the table
+    */
+   public BulkLoader(Transaction tx, String tblname, Layout layout) {
+      this.tx = tx;
+      this.layout = layout;
+      filename = tblname + ".tbl";
+      blknum = tx.beginLoad(filename);
+      page = new Page(tx.blockSize());
+   }
+
+   /**
+    * Adds a new record, whose fields are 0 or empty
+    * until they are set.
+    * If the current page is full, it is written first.
+    */
+   public void insert() {
+      currentslot++;
+      if (offset(currentslot+1) > tx.blockSize()) {
+         writePage();
+         currentslot = 0;
+      }
+      page.setInt(offset(currentslot), RecordPage.USED);
+   }
+
+   public void setInt(String fldname, int val) {
+      page.setInt(offset(currentslot) + layout.offset(fldname), val);
+   }
+
+   public void setString(String fldname, String val) {
+      page.setString(offset(currentslot) + layout.offset(fldname), val);
+   }
+
+   public void setVal(String fldname, Constant val) {
+      if (layout.schema().type(fldname) == INTEGER)
+         setInt(fldname, val.asInt());
+      else
+         setString(fldname, val.asString());
+   }
+
+   /**
+    * Returns the id of the current record.
+    * @return the id of the current record
+    */
+   public RID getRid() {
+      return new RID(blknum, currentslot);
+   }
+
+   /**
+    * Writes the last page, if it has any records.
+    */
+   public void close() {
+      if (currentslot >= 0)
+         writePage();
+      currentslot = -1;
+   }
+
+   /**
+    * Loads the records of a file of comma-separated values,
+    * one record per line, as parsed by {@link #parseLine(String, Schema)};
+    * blank lines are skipped. The path of the file is relative to
+    * the database directory, and cannot lead outside of it.
+    * The value of each field that has an index is also inserted
+    * into that index. The loader is closed afterwards.
+    * @param path the path of the file
+    * @param indexes the open indexes of the table, keyed by field name
+    * @return the number of loaded records
+    */
+   public int load(String path, Map<String,Index> indexes) {
+      Schema sch = layout.schema();
+      int count = 0;
+      try (BufferedReader reader = new BufferedReader(new FileReader(tx.file(path)))) {
+         for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.isBlank())
+               continue;
+            insert();
+            RID rid = getRid();
+            Iterator<Constant> iter = parseLine(line, sch).iterator();
+            for (String fldname : sch.fields()) {
+               Constant val = iter.next();
+               setVal(fldname, val);
+               Index idx = indexes.get(fldname);
+               if (idx != null)
+                  idx.insert(val, rid);
+            }
+            count++;
+         }
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot read " + path);
+      }
+      close();
+      return count;
+   }
+
+   /**
+    * Parses a line of comma-separated values into
+    * the values of the fields of the schema, in order.
+    * The values of string fields are not quoted,
+    * and cannot contain commas.
+    * @param line the line of values
+    * @param sch the schema of the table
+    * @return the values of the fields
+    */
+   public static List<Constant> parseLine(String line, Schema sch) {
+      String[] vals = line.split(",", -1);
+      List<String> fields = sch.fields();
+      if (vals.length != fields.size())
+         throw new RuntimeException("expected " + fields.size() + " values: " + line);
+      List<Constant> consts = new ArrayList<>();
+      for (int i=0; i<vals.length; i++) {
+         String val = vals[i].trim();
+         if (sch.type(fields.get(i)) == INTEGER)
+            consts.add(new Constant(Integer.parseInt(val)));
+         else
+            consts.add(new Constant(val));
+      }
+      return consts;
+   }
+
+   private void writePage() {
+      tx.writeLoaded(new BlockId(filename, blknum), page);
+      blknum++;
+      page = new Page(tx.blockSize());
+   }
+
+   private int offset(int slot) {
+      return slot * layout.slotSize();
+   }
+}
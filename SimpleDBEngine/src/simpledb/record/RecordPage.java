@@ -2,10 +2,13 @@ package simpledb.record;
 
 import static java.sql.Types.INTEGER;
 import simpledb.file.*;
+import simpledb.buffer.BufferRing;
 import simpledb.tx.Transaction;
 
 /**
  * Store a record at a given location in a block. 
+ * If the table is locked by record, the record page
+ * locks each record before it reads or modifies it.
  * @author Edward Sciore
  */
 public class RecordPage {
@@ -13,12 +16,23 @@ public class RecordPage {
    private Transaction tx;
    private BlockId blk;
    private Layout layout;
+   private boolean locksRecords;
 
    public RecordPage(Transaction tx, BlockId blk, Layout layout) {
+      this(tx, blk, layout, null);
+   }
+
+   /**
+    * Creates a record page for a block that is being read
+    * by a sequential scan through the specified ring.
+    * @see Transaction#pin(BlockId, BufferRing)
+    */
+   public RecordPage(Transaction tx, BlockId blk, Layout layout, BufferRing ring) {
       this.tx = tx;
       this.blk = blk;
       this.layout = layout;
-      tx.pin(blk);
+      locksRecords = tx.locksRecords(blk.fileName());
+      tx.pin(blk, ring);
    }
 
    /**
@@ -28,6 +42,7 @@ public class RecordPage {
     * @return the integer stored in that field
     */
    public int getInt(int slot, String fldname) {
+      sLock(slot);
       int fldpos = offset(slot) + layout.offset(fldname);
       return tx.getInt(blk, fldpos);
    }
@@ -39,6 +54,7 @@ public class RecordPage {
     * @return the string stored in that field
     */
    public String getString(int slot, String fldname) {
+      sLock(slot);
       int fldpos = offset(slot) + layout.offset(fldname);
       return tx.getString(blk, fldpos);
    }
@@ -50,6 +66,7 @@ public class RecordPage {
     * @param val the integer value stored in that field
     */
    public void setInt(int slot, String fldname, int val) {
+      xLock(slot);
       int fldpos = offset(slot) + layout.offset(fldname);
       tx.setInt(blk, fldpos, val, true);
    }
@@ -61,6 +78,7 @@ public class RecordPage {
     * @param val the string value stored in that field
     */
    public void setString(int slot, String fldname, String val) {
+      xLock(slot);
       int fldpos = offset(slot) + layout.offset(fldname);
       tx.setString(blk, fldpos, val, true);
    }
@@ -72,8 +90,14 @@ public class RecordPage {
    /** Use the layout to format a new block of records.
     *  These values should not be logged 
     *  (because the old values are meaningless).
+    *  A block of a table that is locked by record is not formatted,
+    *  since other transactions can insert into it as soon as it
+    *  is appended; a new block is all zeros, which is already
+    *  a block of empty records.
     */ 
    public void format() {
+      if (locksRecords)
+         return;
       int slot = 0;
       while (isValidSlot(slot)) {
          tx.setInt(blk, offset(slot), EMPTY, false); 
@@ -93,7 +117,16 @@ public class RecordPage {
       return searchAfter(slot, USED);
    }
  
+   /**
+    * Find an empty slot after the specified one, and mark it used.
+    * If the table is locked by record, the slots that other
+    * transactions have locked are skipped, since their records
+    * may be restored by a rollback.
+    * @return the slot of the new record, or -1 if the block is full
+    */
    public int insertAfter(int slot) {
+      if (locksRecords)
+         return claimAfter(slot);
       int newslot = searchAfter(slot, EMPTY);
       if (newslot >= 0)
          setFlag(newslot, USED);
@@ -110,12 +143,14 @@ public class RecordPage {
     * Set the record's empty/inuse flag.
     */
    private void setFlag(int slot, int flag) {
+      xLock(slot);
       tx.setInt(blk, offset(slot), flag, true); 
    }
 
    private int searchAfter(int slot, int flag) {
       slot++;
       while (isValidSlot(slot)) {
+         sLock(slot);
          if (tx.getInt(blk, offset(slot)) == flag)
             return slot;
          slot++;
@@ -123,6 +158,34 @@ public class RecordPage {
       return -1;
    }
 
+   /**
+    * Look for an empty slot that no other transaction has locked,
+    * and lock it; the flag is read again once the slot is locked,
+    * since another transaction may have used it meanwhile.
+    */
+   private int claimAfter(int slot) {
+      slot++;
+      while (isValidSlot(slot)) {
+         if (tx.getInt(blk, offset(slot)) == EMPTY && tx.tryXLock(blk, slot)
+               && tx.getInt(blk, offset(slot)) == EMPTY) {
+            setFlag(slot, USED);
+            return slot;
+         }
+         slot++;
+      }
+      return -1;
+   }
+
+   private void sLock(int slot) {
+      if (locksRecords)
+         tx.sLock(blk, slot);
+   }
+
+   private void xLock(int slot) {
+      if (locksRecords)
+         tx.xLock(blk, slot);
+   }
+
    private boolean isValidSlot(int slot) {
       return offset(slot+1) <= tx.blockSize();
    }
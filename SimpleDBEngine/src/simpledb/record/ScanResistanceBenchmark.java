@@ -0,0 +1,101 @@
+package simpledb.record;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.buffer.BufferMgr;
+import simpledb.file.BlockId;
+import simpledb.tx.Transaction;
+
+/**
+ * Measures the latency of random record lookups in a small table,
+ * first on their own, and then while another thread repeatedly scans
+ * a table that is ten times larger than the buffer pool,
+ * with and without buffer rings for the scan.
+ * The hit ratio is the fraction of lookups that found
+ * their block in the buffer pool.
+ * Usage: ScanResistanceBenchmark [seconds per phase]
+ */
+public class ScanResistanceBenchmark {
+   private static final int POOL = 200, HOT = 40, BIG = 2000;
+
+   public static void main(String[] args) throws Exception {
+      int secs = (args.length > 0) ? Integer.parseInt(args[0]) : 2;
+      SimpleDB db = new SimpleDB("scanresistancebenchmark", 400, POOL);
+      BufferMgr bm = db.bufferMgr();
+      Layout layout = new Layout(schema());
+      Transaction tx = db.newTx();
+      fill(tx, "hot", HOT, layout);
+      fill(tx, "big", BIG, layout);
+      tx.commit();
+
+      int ringsize = Math.min(16, POOL / 8);
+      System.out.println("phase                    lookups  hit ratio  mean us  p99 us");
+      run(db, layout, secs, false, "lookups only");
+      bm.setRingSize(0);
+      run(db, layout, secs, true, "with scan, no ring");
+      bm.setRingSize(ringsize);
+      run(db, layout, secs, true, "with scan, ring of " + ringsize);
+   }
+
+   private static void run(SimpleDB db, Layout layout, int secs, boolean scan,
+                           String phase) throws InterruptedException {
+      long end = System.currentTimeMillis() + 1000L * secs;
+      Thread scanner = new Thread(() -> {
+         Transaction tx = db.newTx();
+         TableScan ts = new TableScan(tx, "big", layout);
+         while (System.currentTimeMillis() < end) {
+            ts.beforeFirst();
+            while (ts.next() && System.currentTimeMillis() < end)
+               ts.getInt("A");
+         }
+         ts.close();
+         tx.commit();
+      });
+      if (scan)
+         scanner.start();
+
+      BufferMgr bm = db.bufferMgr();
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "hot", layout);
+      Random rand = new Random(1);
+      List<Long> times = new ArrayList<>();
+      int hits = 0;
+      while (System.currentTimeMillis() < end) {
+         int blknum = rand.nextInt(HOT);
+         if (bm.isResident(new BlockId("hot.tbl", blknum)))
+            hits++;
+         long start = System.nanoTime();
+         ts.moveToRid(new RID(blknum, 0));
+         ts.getInt("A");
+         times.add(System.nanoTime() - start);
+         Thread.sleep(0, 100000);  // think time between lookups
+      }
+      ts.close();
+      tx.commit();
+      if (scan)
+         scanner.join();
+
+      Collections.sort(times);
+      double mean = times.stream().mapToLong(Long::longValue).average().orElse(0);
+      long p99 = times.get((int) (times.size() * 0.99));
+      System.out.format("%-22s %9d %9.1f%% %8.1f %7.1f%n", phase, times.size(),
+                        100.0 * hits / times.size(), mean / 1000, p99 / 1000.0);
+   }
+
+   private static Schema schema() {
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      sch.addStringField("B", 80);
+      return sch;
+   }
+
+   private static void fill(Transaction tx, String tblname, int numblocks, Layout layout) {
+      TableScan ts = new TableScan(tx, tblname, layout);
+      while (tx.size(tblname + ".tbl") < numblocks) {
+         ts.insert();
+         ts.setInt("A", ts.getRid().blockNumber());
+         ts.setString("B", "record");
+      }
+      ts.close();
+   }
+}
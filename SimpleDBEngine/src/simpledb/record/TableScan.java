@@ -1,7 +1,8 @@
 package simpledb.record;
 
 import static java.sql.Types.INTEGER;
-import simpledb.file.BlockId;
+import simpledb.file.*;
+import simpledb.buffer.BufferRing;
 import simpledb.query.*;
 import simpledb.tx.Transaction;
 
@@ -15,25 +16,37 @@ public class TableScan implements UpdateScan {
    private Layout layout;
    private RecordPage rp;
    private String filename;
+   private BufferRing ring;
    private int currentslot;
 
+   /**
+    * Creates a scan of the specified table.
+    * A scan of a temporary or large table reads its blocks through
+    * a small ring of buffers, so that it does not flood the buffer pool;
+    * records fetched by {@link #moveToRid(RID)} use the pool as usual.
+    */
    public TableScan(Transaction tx, String tblname, Layout layout) {
       this.tx = tx;
       this.layout = layout;
       filename = tblname + ".tbl";
-      if (tx.size(filename) == 0)
-         moveToNewBlock();
-      else 
+      ring = tx.scanRing(filename);
+      if (tx.size(filename) > 0)
          moveToBlock(0);
+      else if (!tx.isReadOnly() || FileMgr.isTemp(filename))
+         moveToNewBlock();
+      // else the table is empty in the snapshot of a read-only transaction
    }
 
    // Methods that implement Scan
 
    public void beforeFirst() {
-      moveToBlock(0);
+      if (rp != null)
+         moveToBlock(0);
    }
 
    public boolean next() {
+      if (rp == null)
+         return false;
       currentslot = rp.nextAfter(currentslot);
       while (currentslot < 0) {
          if (atLastBlock())
@@ -116,14 +129,14 @@ public class TableScan implements UpdateScan {
    private void moveToBlock(int blknum) {
       close();
       BlockId blk = new BlockId(filename, blknum);
-      rp = new RecordPage(tx, blk, layout);
+      rp = new RecordPage(tx, blk, layout, ring);
       currentslot = -1;
    }
 
    private void moveToNewBlock() {
       close();
       BlockId blk = tx.append(filename);
-      rp = new RecordPage(tx, blk, layout);
+      rp = new RecordPage(tx, blk, layout, ring);
       rp.format();
       currentslot = -1;
    }
@@ -2,9 +2,13 @@ package simpledb.server;
 
 import java.io.File;
 import simpledb.file.FileMgr;
+import simpledb.file.MappedFileMgr;
 import simpledb.log.LogMgr;
 import simpledb.buffer.BufferMgr;
+import simpledb.buffer.BufferMgrMonitor;
 import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.LockMgr;
+import simpledb.tx.recovery.*;
 import simpledb.metadata.MetadataMgr;
 import simpledb.plan.*;
 import simpledb.index.planner.IndexUpdatePlanner;
@@ -19,29 +23,87 @@ public class SimpleDB {
    public static int BLOCK_SIZE = 400;
    public static int BUFFER_SIZE = 8;
    public static String LOG_FILE = "simpledb.log";
+   public static int LOG_BUFFERS = 8;
+   public static int LOG_SEGMENT_BLOCKS = 1024;
+   public static boolean MAPPED_FILES = false;
+   public static int PREFETCH_DEPTH = 8;
+   public static String REPLACEMENT_POLICY = "lru";
+   public static int BUFFER_PARTITIONS = 0;
+   public static int WRITER_DELAY = 100;    // milliseconds; 0 disables the writer
+   public static int WRITER_MAX_PAGES = 64; // buffers written per round
+   public static int COMMIT_DELAY = 0;      // microseconds
+   public static int ASYNC_COMMIT_DELAY = 10; // milliseconds
+   public static int CHECKPOINT_INTERVAL = 1000; // milliseconds; 0 disables checkpoints
+   public static boolean FORCE_AT_COMMIT = true;  // false selects undo/redo recovery
+   public static int RECOVERY_THREADS = 0;  // 0 means one per processor
+   public static String DEADLOCK_VICTIM = "youngest"; // or "leastwork"; "none" disables detection
+   public static long LOCK_TIMEOUT = 0;     // milliseconds; 0 waits until granted or deadlocked
+   public static int LOCK_STRIPES = 64;     // partitions of the lock table, each with its own latch
+   public static boolean RECORD_LOCKING = false; // lock the records of tables instead of their blocks
+   public static int LOCK_ESCALATION = 1000; // block or record locks per file before a file lock; 0 never escalates
 
    private  FileMgr     fm;
    private  BufferMgr   bm;
    private  LogMgr      lm;
+   private  TxTable     txtbl;
+   private  LockMgr     lockmgr;
    private  MetadataMgr mdm;
    private  Planner planner;
+   private  Checkpointer checkpointer;
 
    /**
     * A constructor useful for debugging.
+    * If MAPPED_FILES is set, the database files are accessed
+    * through a {@link MappedFileMgr}.
+    * The buffer manager replaces buffers according to
+    * REPLACEMENT_POLICY, which is one of "lru", "clock", "lru2" or "2q",
+    * and the pool has BUFFER_PARTITIONS partitions
+    * (0 lets the buffer manager decide).
+    * Unless WRITER_DELAY is 0, a background thread writes
+    * up to WRITER_MAX_PAGES dirty buffers every WRITER_DELAY milliseconds.
+    * The log is split into segments of LOG_SEGMENT_BLOCKS blocks.
+    * Its tail is kept in a ring of LOG_BUFFERS pages,
+    * and the log writer waits COMMIT_DELAY microseconds
+    * for other commits to join a flush.
+    * The commit record of an asynchronous commit is flushed
+    * within ASYNC_COMMIT_DELAY milliseconds.
+    * Unless FORCE_AT_COMMIT is set, commits only force the log,
+    * and recovery redoes the committed modifications that were
+    * not written; the log is then kept from startup until
+    * the first checkpoint.
+    * Recovery applies a large log with RECOVERY_THREADS threads.
+    * The transactions of the database share its table of active
+    * transactions and its lock manager, which are not shared
+    * with the other databases of the JVM.
+    * The counters of the buffer manager are published through JMX.
     * @param dirname the name of the database directory
     * @param blocksize the block size
     * @param buffsize the number of buffers
     */
    public SimpleDB(String dirname, int blocksize, int buffsize) {
       File dbDirectory = new File(dirname);
-      fm = new FileMgr(dbDirectory, blocksize);
-      lm = new LogMgr(fm, LOG_FILE);
-      bm = new BufferMgr(fm, lm, buffsize); 
+      if (MAPPED_FILES)
+         fm = new MappedFileMgr(dbDirectory, blocksize);
+      else
+         fm = new FileMgr(dbDirectory, blocksize);
+      lm = new LogMgr(fm, LOG_FILE, LOG_BUFFERS, LOG_SEGMENT_BLOCKS);
+      lm.setCommitDelay(COMMIT_DELAY);
+      lm.setLazyFlushDelay(ASYNC_COMMIT_DELAY);
+      bm = new BufferMgr(fm, lm, buffsize, PREFETCH_DEPTH, REPLACEMENT_POLICY,
+                         BUFFER_PARTITIONS);
+      if (WRITER_DELAY > 0)
+         bm.startWriter(WRITER_DELAY, WRITER_MAX_PAGES);
+      BufferMgrMonitor.register(bm, dirname);
+      txtbl = new TxTable();
+      lockmgr = new LockMgr();
+      checkpointer = new Checkpointer(fm, lm, bm, txtbl);
    }
    
    /**
     * A simpler constructor for most situations. Unlike the
-    * 3-arg constructor, it also initializes the metadata tables.
+    * 3-arg constructor, it also initializes the metadata tables,
+    * and after recovery it writes a nonquiescent checkpoint
+    * every CHECKPOINT_INTERVAL milliseconds.
     * @param dirname the name of the database directory
     */
    public SimpleDB(String dirname) {
@@ -61,6 +123,8 @@ public class SimpleDB {
       UpdatePlanner up = new IndexUpdatePlanner(mdm);
       planner = new Planner(qp, up);
       tx.commit();
+      if (CHECKPOINT_INTERVAL > 0)
+         checkpointer.start(CHECKPOINT_INTERVAL);
    }
    
    /**
@@ -68,7 +132,7 @@ public class SimpleDB {
     * and access the metadata.
     */
    public Transaction newTx() {
-      return new Transaction(fm, lm, bm);
+      return new Transaction(fm, lm, bm, txtbl, lockmgr);
    }
    
    public MetadataMgr mdMgr() {
@@ -89,4 +153,10 @@ public class SimpleDB {
    public BufferMgr bufferMgr() {
       return bm;
    }   
+   public Checkpointer checkpointer() {
+      return checkpointer;
+   }
+   public LockMgr lockMgr() {
+      return lockmgr;
+   }
  }
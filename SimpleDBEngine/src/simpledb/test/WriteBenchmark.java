@@ -0,0 +1,62 @@
+package simpledb.test;
+
+import java.io.File;
+import java.util.Arrays;
+import simpledb.materialize.SortPlan;
+import simpledb.plan.*;
+import simpledb.query.Scan;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Measures write-heavy insert throughput and the time a
+ * SortPlan spends spilling its runs to temporary tables.
+ * Usage: WriteBenchmark [numrows] [rowsPerCommit]
+ */
+public class WriteBenchmark {
+   public static void main(String[] args) {
+      int numrows = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+      int batch   = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+      File dir = new File("writebenchmark");
+      if (dir.exists()) {
+         for (File f : dir.listFiles())
+            f.delete();
+         dir.delete();
+      }
+      SimpleDB db = new SimpleDB(dir.getName());
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table bench(a int, b varchar(10))", tx);
+      tx.commit();
+
+      long start = System.nanoTime();
+      tx = db.newTx();
+      for (int i=0; i<numrows; i++) {
+         int b = (i * 7919) % numrows;
+         planner.executeUpdate("insert into bench(a, b) values (" + i + ", 'v" + b + "')", tx);
+         if ((i+1) % batch == 0) {
+            tx.commit();
+            tx = db.newTx();
+         }
+      }
+      tx.commit();
+      double insertsecs = (System.nanoTime() - start) / 1e9;
+
+      tx = db.newTx();
+      start = System.nanoTime();
+      Plan p = new TablePlan(tx, "bench", db.mdMgr());
+      Plan sp = new SortPlan(tx, p, Arrays.asList("b"));
+      Scan s = sp.open();
+      double spillsecs = (System.nanoTime() - start) / 1e9;
+      int count = 0;
+      while (s.next())
+         count++;
+      s.close();
+      tx.commit();
+
+      System.out.format("inserted %d rows in %.2fs (%.0f rows/s)%n",
+                        numrows, insertsecs, numrows / insertsecs);
+      System.out.format("sorted %d rows; run generation and merging took %.2fs%n",
+                        count, spillsecs);
+   }
+}
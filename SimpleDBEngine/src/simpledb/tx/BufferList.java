@@ -31,9 +31,10 @@ class BufferList {
    /**
     * Pin the block and keep track of the buffer internally.
     * @param blk a reference to the disk block
+    * @param ring the ring of a sequential scan, or null
     */
-   void pin(BlockId blk) {
-      Buffer buff = bm.pin(blk);
+   void pin(BlockId blk, BufferRing ring) {
+      Buffer buff = bm.pin(blk, ring);
       buffers.put(blk, buff);
       pins.add(blk);
    }
@@ -0,0 +1,75 @@
+package simpledb.tx;
+
+import java.io.*;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+
+/**
+ * Measures the commit throughput of concurrent transactions,
+ * without and with a commit delay, with asynchronous commits,
+ * and without forcing the modified buffers at commit,
+ * as the number of client threads grows.
+ * Each thread repeatedly modifies a block of its own file and commits,
+ * so the threads never wait for each other's locks,
+ * and the benchmark measures the cost of making commits durable.
+ * The number of log flushes shows how many commits
+ * each forced write of the log made durable.
+ * Usage: CommitBenchmark [delay in microseconds]
+ */
+public class CommitBenchmark {
+   private static final int COMMITS = 100;
+
+   public static void main(String[] args) throws InterruptedException {
+      int delay = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+      SimpleDB db = new SimpleDB("commitbenchmark", 400, 64);
+      LogMgr lm = db.logMgr();
+      PrintStream out = System.out;
+      out.println("   threads      no delay (commits/s, flushes)   "
+                  + delay + "us delay (commits/s, flushes)      async (commits/s, flushes)"
+                  + "   no force (commits/s, flushes)");
+      for (int threads=1; threads<=16; threads*=2) {
+         lm.setCommitDelay(0);
+         String r1 = run(db, threads, false);
+         lm.setCommitDelay(delay);
+         String r2 = run(db, threads, false);
+         lm.setCommitDelay(0);
+         String r3 = run(db, threads, true);
+         SimpleDB.FORCE_AT_COMMIT = false;
+         String r4 = run(db, threads, false);
+         SimpleDB.FORCE_AT_COMMIT = true;
+         out.format("%10d %32s %32s %32s %32s%n", threads, r1, r2, r3, r4);
+      }
+   }
+
+   private static String run(SimpleDB db, int numthreads,
+                             boolean async) throws InterruptedException {
+      LogMgr lm = db.logMgr();
+      Thread[] threads = new Thread[numthreads];
+      for (int t=0; t<numthreads; t++) {
+         BlockId blk = new BlockId("benchfile" + t, 0);
+         threads[t] = new Thread(() -> {
+            for (int i=0; i<COMMITS; i++) {
+               Transaction tx = db.newTx();
+               tx.setAsyncCommit(async);
+               tx.pin(blk);
+               tx.setInt(blk, 0, i, true);
+               tx.commit();
+            }
+         });
+      }
+      // the transactions print a line for each commit
+      PrintStream out = System.out;
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+      long flushes = lm.flushes();
+      long start = System.nanoTime();
+      for (Thread t : threads)
+         t.start();
+      for (Thread t : threads)
+         t.join();
+      double secs = (System.nanoTime() - start) / 1e9;
+      System.setOut(out);
+      return String.format("%.0f, %d", numthreads * COMMITS / secs,
+                           lm.flushes() - flushes);
+   }
+}
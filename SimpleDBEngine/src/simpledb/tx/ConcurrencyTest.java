@@ -1,21 +1,14 @@
 package simpledb.tx;
 
-import simpledb.buffer.BufferMgr;
 import simpledb.file.*;
-import simpledb.log.LogMgr;
 import simpledb.server.SimpleDB;
 
 public class ConcurrencyTest {
-   private static FileMgr fm;
-   private static LogMgr lm;
-   private static BufferMgr bm;
+   private static SimpleDB db;
 
    public static void main(String[] args) {
       //initialize the database system
-      SimpleDB db = new SimpleDB("concurrencytest", 400, 8); 
-      fm = db.fileMgr();
-      lm = db.logMgr();
-      bm = db.bufferMgr();
+      db = new SimpleDB("concurrencytest", 400, 8); 
       A a = new A(); new Thread(a).start();
       B b = new B(); new Thread(b).start();
       C c = new C(); new Thread(c).start();
@@ -24,7 +17,7 @@ public class ConcurrencyTest {
    static class A implements Runnable { 
       public void run() {
          try {
-            Transaction txA = new Transaction(fm, lm, bm);
+            Transaction txA = db.newTx();
             BlockId blk1 = new BlockId("testfile", 1);
             BlockId blk2 = new BlockId("testfile", 2);
             txA.pin(blk1);
@@ -47,7 +40,7 @@ public class ConcurrencyTest {
    static class B implements Runnable {
       public void run() {
          try {
-            Transaction txB = new Transaction(fm, lm, bm);
+            Transaction txB = db.newTx();
             BlockId blk1 = new BlockId("testfile", 1);
             BlockId blk2 = new BlockId("testfile", 2);
             txB.pin(blk1);
@@ -69,7 +62,7 @@ public class ConcurrencyTest {
    static class C implements Runnable {
       public void run() {
          try {
-            Transaction txC = new Transaction(fm, lm, bm);
+            Transaction txC = db.newTx();
             BlockId blk1 = new BlockId("testfile", 1);
             BlockId blk2 = new BlockId("testfile", 2);
             txC.pin(blk1);
@@ -1,10 +1,11 @@
 package simpledb.tx;
 
+import java.io.File;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 import simpledb.buffer.*;
 import simpledb.tx.recovery.*;
-import simpledb.tx.concurrency.ConcurrencyMgr;
+import simpledb.tx.concurrency.*;
 
 /**
  * Provide transaction management for clients,
@@ -21,37 +22,75 @@ public class Transaction {
    private FileMgr fm;
    private int txnum;
    private BufferList mybuffers;
+   private boolean asyncCommit = false;
    
    /**
     * Create a new transaction and its associated 
     * recovery and concurrency managers.
     * This constructor depends on the file, log, and buffer
-    * managers that it gets from the class
+    * managers, the table of active transactions and the
+    * lock manager that it gets from the class
     * {@link simpledb.server.SimpleDB}.
-    * Those objects are created during system initialization.
-    * Thus this constructor cannot be called until either
-    * {@link simpledb.server.SimpleDB#init(String)} or 
-    * {@link simpledb.server.SimpleDB#initFileLogAndBufferMgr(String)} or
-    * is called first.
+    * Those objects are created during system initialization,
+    * once for each database.
+    * Thus this constructor cannot be called until
+    * the database has been created, and the transactions of
+    * a database must all be given the same objects;
+    * {@link simpledb.server.SimpleDB#newTx()} does so.
     */
-   public Transaction(FileMgr fm, LogMgr lm, BufferMgr bm) {
+   public Transaction(FileMgr fm, LogMgr lm, BufferMgr bm, TxTable txtbl, LockMgr lockmgr) {
       this.fm = fm;
       this.bm = bm;
       txnum       = nextTxNumber();
-      recoveryMgr = new RecoveryMgr(this, txnum, lm, bm);
-      concurMgr   = new ConcurrencyMgr();
+      recoveryMgr = new RecoveryMgr(this, txnum, fm, lm, bm, txtbl, lockmgr);
+      concurMgr   = new ConcurrencyMgr(txnum, lockmgr);
       mybuffers = new BufferList(bm);
    }
    
+   /**
+    * Specifies whether the transaction commits asynchronously.
+    * An asynchronous commit does not wait for its commit record
+    * to reach the disk, so a crash shortly after the commit
+    * can roll the transaction back.
+    * The log manager bounds how long the record can wait.
+    * @param async true if the commit should not wait for the log
+    * @see simpledb.log.LogMgr#setLazyFlushDelay(long)
+    */
+   public void setAsyncCommit(boolean async) {
+      asyncCommit = async;
+   }
+
+   /**
+    * Specifies whether the transaction is read-only.
+    * A read-only transaction reads a consistent snapshot of the
+    * database, as of the last commit before its first read,
+    * without locking the blocks that it reads,
+    * so that it neither waits for writers nor delays them.
+    * It can only modify temporary files.
+    * This method must be called before the transaction
+    * reads or modifies any block.
+    * @param readOnly true if the transaction is read-only
+    */
+   public void setReadOnly(boolean readOnly) {
+      concurMgr.setReadOnly(readOnly);
+   }
+
+   public boolean isReadOnly() {
+      return concurMgr.isReadOnly();
+   }
+
    /**
     * Commit the current transaction.
     * Flush all modified buffers (and their log records),
     * write and flush a commit record to the log,
     * release all locks, and unpin any pinned buffers.
+    * An asynchronous commit does not wait for the commit record
+    * to be flushed.
     */
    public void commit() {
-      recoveryMgr.commit();
+      recoveryMgr.commit(asyncCommit);
       System.out.println("transaction " + txnum + " committed");
+      concurMgr.commit();
       concurMgr.release();
       mybuffers.unpinAll();
    }
@@ -89,7 +128,33 @@ public class Transaction {
     * @param blk a reference to the disk block
     */
    public void pin(BlockId blk) {
-      mybuffers.pin(blk);
+      mybuffers.pin(blk, null);
+   }
+   
+   /**
+    * Pin the specified block on behalf of a sequential scan.
+    * If the block is not in the buffer pool, it is read into
+    * the scan's ring of buffers, so that the scan does not
+    * replace the buffers used by other transactions.
+    * @param blk a reference to the disk block
+    * @param ring the ring returned by {@link #scanRing(String)}, or null
+    */
+   public void pin(BlockId blk, BufferRing ring) {
+      mybuffers.pin(blk, ring);
+   }
+   
+   /**
+    * Return a ring of buffers for a sequential scan of the
+    * specified file, if the scan could otherwise flood the buffer pool.
+    * That is the case for temporary files, and for files
+    * larger than a quarter of the pool.
+    * @param filename the name of the file
+    * @return a new ring, or null if the scan should use the pool as usual
+    */
+   public BufferRing scanRing(String filename) {
+      if (FileMgr.isTemp(filename) || fm.length(filename) > bm.size() / 4)
+         return bm.newRing();
+      return null;
    }
    
    /**
@@ -107,6 +172,8 @@ public class Transaction {
     * specified offset of the specified block.
     * The method first obtains an SLock on the block,
     * then it calls the buffer to retrieve the value.
+    * A read-only transaction reads the value from the
+    * version of the block in its snapshot instead.
     * @param blk a reference to a disk block
     * @param offset the byte offset within the block
     * @return the integer stored at that offset
@@ -114,7 +181,12 @@ public class Transaction {
    public int getInt(BlockId blk, int offset) {
       concurMgr.sLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      return buff.contents().getInt(offset);
+      if (!concurMgr.latches(blk))
+         return buff.contents().getInt(offset);
+      synchronized (buff) {
+         Page p = concurMgr.snapshotVersion(blk, buff.contents());
+         return (p != null) ? p.getInt(offset) : buff.contents().getInt(offset);
+      }
    }
    
    /**
@@ -122,6 +194,8 @@ public class Transaction {
     * specified offset of the specified block.
     * The method first obtains an SLock on the block,
     * then it calls the buffer to retrieve the value.
+    * A read-only transaction reads the value from the
+    * version of the block in its snapshot instead.
     * @param blk a reference to a disk block
     * @param offset the byte offset within the block
     * @return the string stored at that offset
@@ -129,7 +203,12 @@ public class Transaction {
    public String getString(BlockId blk, int offset) {
       concurMgr.sLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      return buff.contents().getString(offset);
+      if (!concurMgr.latches(blk))
+         return buff.contents().getString(offset);
+      synchronized (buff) {
+         Page p = concurMgr.snapshotVersion(blk, buff.contents());
+         return (p != null) ? p.getString(offset) : buff.contents().getString(offset);
+      }
    }
    
    /**
@@ -141,6 +220,10 @@ public class Transaction {
     * writes that record to the log.
     * Finally, it calls the buffer to store the value,
     * passing in the LSN of the log record and the transaction's id. 
+    * The first time the transaction modifies the block,
+    * the previous contents are saved for the read-only transactions.
+    * The block is latched throughout, since with record locking
+    * other transactions can modify other records of the block.
     * @param blk a reference to the disk block
     * @param offset a byte offset within that block
     * @param val the value to be stored
@@ -148,12 +231,15 @@ public class Transaction {
    public void setInt(BlockId blk, int offset, int val, boolean okToLog) {
       concurMgr.xLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      int lsn = -1;
-      if (okToLog)
-         lsn = recoveryMgr.setInt(buff, offset, val);
       Page p = buff.contents();
-      p.setInt(offset, val);
-      buff.setModified(txnum, lsn);
+      synchronized (buff) {
+         int lsn = -1;
+         if (okToLog)
+            lsn = recoveryMgr.setInt(buff, offset, val);
+         concurMgr.saveVersion(blk, p, offset, Integer.BYTES);
+         p.setInt(offset, val);
+         buff.setModified(txnum, lsn);
+      }
    }
    
    /**
@@ -165,6 +251,10 @@ public class Transaction {
     * writes that record to the log.
     * Finally, it calls the buffer to store the value,
     * passing in the LSN of the log record and the transaction's id. 
+    * The first time the transaction modifies the block,
+    * the previous contents are saved for the read-only transactions.
+    * The block is latched throughout, since with record locking
+    * other transactions can modify other records of the block.
     * @param blk a reference to the disk block
     * @param offset a byte offset within that block
     * @param val the value to be stored
@@ -172,12 +262,69 @@ public class Transaction {
    public void setString(BlockId blk, int offset, String val, boolean okToLog) {
       concurMgr.xLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      int lsn = -1;
-      if (okToLog)
-         lsn = recoveryMgr.setString(buff, offset, val);
       Page p = buff.contents();
-      p.setString(offset, val);
-      buff.setModified(txnum, lsn);
+      synchronized (buff) {
+         int lsn = -1;
+         if (okToLog)
+            lsn = recoveryMgr.setString(buff, offset, val);
+         int oldlen = Math.min(Integer.BYTES + p.getInt(offset), fm.blockSize() - offset);
+         concurMgr.saveVersion(blk, p, offset, oldlen);
+         p.setString(offset, val);
+         buff.setModified(txnum, lsn);
+      }
+   }
+
+   /**
+    * Return true if the records of the specified file
+    * are locked instead of its blocks.
+    * The caller must then lock each record with
+    * {@link #sLock(BlockId, int)} or {@link #xLock(BlockId, int)}
+    * before it reads or modifies its values.
+    * @param filename the name of the file
+    * @return true if the file is locked by record
+    */
+   public boolean locksRecords(String filename) {
+      return ConcurrencyMgr.locksRecords(filename);
+   }
+
+   /**
+    * Obtain an SLock on the whole file, so that its blocks
+    * or records are not locked one by one as they are read.
+    * A query planner calls it for a table that a query reads
+    * in full; any other scan locks what it reads.
+    * @param filename the name of the file
+    */
+   public void sLockFile(String filename) {
+      concurMgr.sLockFile(filename);
+   }
+
+   /**
+    * Obtain an SLock on the record at the specified slot of the block.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    */
+   public void sLock(BlockId blk, int slot) {
+      concurMgr.sLock(blk, slot);
+   }
+
+   /**
+    * Obtain an XLock on the record at the specified slot of the block.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    */
+   public void xLock(BlockId blk, int slot) {
+      concurMgr.xLock(blk, slot);
+   }
+
+   /**
+    * Obtain an XLock on the record at the specified slot of the block,
+    * unless another transaction has a lock on it.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    * @return true if the transaction has the XLock
+    */
+   public boolean tryXLock(BlockId blk, int slot) {
+      return concurMgr.tryXLock(blk, slot);
    }
 
    /**
@@ -185,12 +332,16 @@ public class Transaction {
     * This method first obtains an SLock on the 
     * "end of the file", before asking the file manager
     * to return the file size.
+    * A read-only transaction returns the size of
+    * the file in its snapshot instead.
     * @param filename the name of the file
     * @return the number of blocks in the file
     */
    public int size(String filename) {
       BlockId dummyblk = new BlockId(filename, END_OF_FILE);
       concurMgr.sLock(dummyblk);
+      if (concurMgr.readsSnapshot(dummyblk))
+         return concurMgr.snapshotSize(dummyblk, fm);
       return fm.length(filename);
    }
    
@@ -199,18 +350,75 @@ public class Transaction {
     * and returns a reference to it.
     * This method first obtains an XLock on the
     * "end of the file", before performing the append.
+    * If the file is locked by record, the XLock is released
+    * after the append, so that inserting transactions do not
+    * serialize on it; the size of the file is then not saved for
+    * the read-only transactions, which read the new block
+    * but see its records as empty.
     * @param filename the name of the file
     * @return a reference to the newly-created disk block
     */
    public BlockId append(String filename) {
       BlockId dummyblk = new BlockId(filename, END_OF_FILE);
+      if (locksRecords(filename)) {
+         boolean locked = concurMgr.xLockBriefly(dummyblk);
+         try {
+            return fm.append(filename);
+         }
+         finally {
+            if (locked)
+               concurMgr.unlock(dummyblk);
+         }
+      }
       concurMgr.xLock(dummyblk);
+      concurMgr.saveSize(dummyblk, fm.length(filename));
       return fm.append(filename);
    }
    
+   /**
+    * Prepare to load pages at the end of the specified file,
+    * without going through the buffer pool.
+    * This method first obtains an XLock on the
+    * "end of the file", which it keeps until the transaction
+    * finishes, and then logs where the load begins.
+    * @param filename the name of the file
+    * @return the number of the first block to load
+    */
+   public int beginLoad(String filename) {
+      BlockId dummyblk = new BlockId(filename, END_OF_FILE);
+      concurMgr.xLock(dummyblk);
+      int blknum = fm.length(filename);
+      concurMgr.saveSize(dummyblk, blknum);
+      recoveryMgr.load(filename, blknum);
+      return blknum;
+   }
+
+   /**
+    * Write a loaded page directly to disk.
+    * The blocks must be written in order, from the one
+    * returned by {@link #beginLoad(String)}.
+    * The page is forced to disk when the transaction commits,
+    * and emptied if it rolls back.
+    * @param blk a reference to the loaded block
+    * @param p the contents of the block
+    */
+   public void writeLoaded(BlockId blk, Page p) {
+      fm.write(blk, p);
+   }
+
    public int blockSize() {
       return fm.blockSize();
    }
+
+   /**
+    * Return the file at the specified path,
+    * which must be in the database directory.
+    * @param path the path of the file, relative to the database directory
+    * @return the file
+    */
+   public File file(String path) {
+      return fm.file(path);
+   }
    
    public int availableBuffs() {
       return bm.available();
@@ -0,0 +1,73 @@
+package simpledb.tx;
+
+import simpledb.file.*;
+import simpledb.server.SimpleDB;
+
+/**
+ * Readers take turns to hold an SLock on a block, so that
+ * some reader always holds it, while a writer asks for an XLock.
+ * The writer's request is queued ahead of the readers that
+ * come after it, so it is granted while the readers are still running.
+ */
+public class WriterStarvationTest {
+   private static final int READERS = 4, ROUNDS = 10;
+   private static SimpleDB db;
+   private static volatile int readersDone = 0;
+
+   public static void main(String[] args) throws InterruptedException {
+      //initialize the database system
+      db = new SimpleDB("writerstarvationtest", 400, 8);
+      Thread[] threads = new Thread[READERS + 1];
+      for (int i=0; i<READERS; i++)
+         threads[i] = new Thread(new Reader(i * 50));
+      threads[READERS] = new Thread(new Writer());
+      for (Thread t : threads)
+         t.start();
+      for (Thread t : threads)
+         t.join();
+   }
+
+   static class Reader implements Runnable {
+      private int delay;
+
+      Reader(int delay) {
+         this.delay = delay;
+      }
+
+      public void run() {
+         try {
+            Thread.sleep(delay);
+            BlockId blk = new BlockId("testfile", 1);
+            for (int i=0; i<ROUNDS; i++) {
+               Transaction tx = db.newTx();
+               tx.pin(blk);
+               tx.getInt(blk, 0);
+               Thread.sleep(200);
+               tx.commit();
+            }
+            readersDone++;
+         }
+         catch(InterruptedException e) {};
+      }
+   }
+
+   static class Writer implements Runnable {
+      public void run() {
+         try {
+            Thread.sleep(300);
+            Transaction tx = db.newTx();
+            BlockId blk = new BlockId("testfile", 1);
+            tx.pin(blk);
+            System.out.println("Tx W: request xlock 1");
+            tx.setInt(blk, 0, 0, false);
+            if (readersDone == 0)
+               System.out.println("Tx W: receive xlock 1 while the readers are running");
+            else
+               System.out.println("Tx W: receive xlock 1 after the readers finished");
+            tx.commit();
+            System.out.println("Tx W: commit");
+         }
+         catch(InterruptedException e) {};
+      }
+   }
+}
@@ -1,65 +1,433 @@
 package simpledb.tx.concurrency;
 
 import java.util.*;
-import simpledb.file.BlockId;
+import java.util.concurrent.atomic.LongAdder;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
 
 /**
  * The concurrency manager for the transaction.
  * Each transaction has its own concurrency manager. 
  * The concurrency manager keeps track of which locks the 
  * transaction currently has, and interacts with the
- * global lock table as needed. 
+ * lock table of the database as needed. 
+ * <p>
+ * A read-only transaction takes no locks on the blocks of the
+ * database. It reads a snapshot of the database instead,
+ * as of the last commit before its first read, with the help of
+ * the versions that the other transactions save in the version
+ * store of the database before they modify a block or append to a file.
+ * Temporary files are private, and are locked as usual.
+ * <p>
+ * If SimpleDB.RECORD_LOCKING is set, the records of tables are
+ * locked instead of their blocks, so that transactions can modify
+ * different records of a block at once. The block is then only
+ * latched, by synchronizing on its buffer, while a value is read
+ * or written, and the transaction saves the values that it modifies
+ * in the version store instead of the block.
+ * The end of such a table is locked only while a block is appended
+ * or the size is read, which waits for a bulk load of the table;
+ * so record locking does not prevent phantoms.
+ * <p>
+ * The locks form a hierarchy: before a transaction locks a block
+ * or a record, it locks the file in an intention mode (IS or IX),
+ * and a lock on the whole file (S, SIX or X) covers the blocks and
+ * records that it implies, which are then not locked one by one.
+ * A query planner locks a table this way when a query scans all
+ * of its records.
+ * Once a transaction holds SimpleDB.LOCK_ESCALATION locks on the
+ * blocks or records of a file, they are escalated to a lock
+ * on the file, in the mode S, or X if it modifies any of them.
  * @author Edward Sciore
  */
 public class ConcurrencyMgr {
 
    /**
-    * The global lock table. This variable is static because 
-    * all transactions share the same table.
+    * The lock table of the database. All of its
+    * transactions share the same table.
     */
-   private static LockTable locktbl = new LockTable();
-   private Map<BlockId,String> locks  = new HashMap<BlockId,String>();
+   private LockTable locktbl;
+   private VersionStore versions;
+   private LongAdder escalations;
+   private Map<Object,LockMode> locks  = new HashMap<Object,LockMode>();
+   private Map<String,List<Object>> childLocks = new HashMap<>();
+   private Set<BlockId> versioned = new HashSet<>();
+   private Map<BlockId,Set<Integer>> versionedValues = new HashMap<>();
+   private int txnum;
+   private boolean readOnly = false;
+   private int snapshot = -1;
+
+   /**
+    * Creates the concurrency manager of a transaction,
+    * which uses the lock table and version store of
+    * the specified lock manager.
+    * @param txnum the id of the transaction
+    * @param lockmgr the lock manager of the database
+    */
+   public ConcurrencyMgr(int txnum, LockMgr lockmgr) {
+      this.txnum = txnum;
+      locktbl = lockmgr.locktbl;
+      versions = lockmgr.versions;
+      escalations = lockmgr.escalations;
+   }
+
+   /**
+    * Specifies whether the transaction is read-only.
+    * This method must be called before the transaction
+    * reads or modifies any block.
+    * @param readOnly true if the transaction reads a snapshot
+    */
+   public void setReadOnly(boolean readOnly) {
+      this.readOnly = readOnly;
+   }
+
+   public boolean isReadOnly() {
+      return readOnly;
+   }
+
+   /**
+    * Return true if the transaction reads the block from its snapshot,
+    * without locking it.
+    * @param blk a reference to the disk block
+    * @return true if the block is read from the snapshot
+    */
+   public boolean readsSnapshot(BlockId blk) {
+      return readOnly && !FileMgr.isTemp(blk.fileName());
+   }
+
+   /**
+    * Return true if the records of the file are locked
+    * instead of its blocks. That is the case for the tables
+    * other than temporary ones, if SimpleDB.RECORD_LOCKING is set.
+    * @param filename the name of the file
+    * @return true if the file is locked by record
+    */
+   public static boolean locksRecords(String filename) {
+      return SimpleDB.RECORD_LOCKING && filename.endsWith(".tbl")
+            && !FileMgr.isTemp(filename);
+   }
+
+   /**
+    * Return true if a read of the block must synchronize on its buffer,
+    * because it reads the snapshot, or because other transactions
+    * can modify other records of the block meanwhile.
+    * @param blk a reference to the disk block
+    * @return true if the read must latch the block
+    */
+   public boolean latches(BlockId blk) {
+      return readsSnapshot(blk) || locksRecords(blk.fileName());
+   }
+
+   /**
+    * Return the contents of the block as of the snapshot,
+    * or null if they are the current contents of its buffer,
+    * or if the transaction does not read the block from its snapshot.
+    * The caller must synchronize on the buffer, and read
+    * the current contents before releasing it.
+    * @param blk a reference to the disk block
+    * @param current the current contents of the block
+    * @return the old contents of the block, or null
+    */
+   public Page snapshotVersion(BlockId blk, Page current) {
+      if (!readsSnapshot(blk))
+         return null;
+      byte[] image = versions.image(blk, snapshot(), current);
+      return (image == null) ? null : new Page(image);
+   }
+
+   /**
+    * Return the size of the file as of the snapshot.
+    * @param eofblk the block that locks the end of the file
+    * @param fm the file manager
+    * @return the number of blocks of the file in the snapshot
+    */
+   public int snapshotSize(BlockId eofblk, FileMgr fm) {
+      return versions.size(eofblk, snapshot(), fm);
+   }
+
+   /**
+    * Save the contents of the block in the version store,
+    * if the transaction has not modified the block before
+    * and a snapshot may read them.
+    * If the file is locked by record, only the value at the offset
+    * is saved, if the transaction has not modified it before.
+    * The caller must hold an XLock on the block or on the record,
+    * and synchronize on its buffer until it has modified it.
+    * @param blk a reference to the disk block
+    * @param p the current contents of the block
+    * @param offset the offset of the value to be modified
+    * @param length the length of the current value
+    */
+   public void saveVersion(BlockId blk, Page p, int offset, int length) {
+      if (FileMgr.isTemp(blk.fileName()))
+         return;
+      if (!locksRecords(blk.fileName())) {
+         if (versioned.add(blk) && versions.mustSave(txnum))
+            versions.saveBlock(txnum, blk, p.copy());
+      }
+      else if (versionedValues.computeIfAbsent(blk, b -> new HashSet<>()).add(offset)
+            && versions.mustSave(txnum))
+         versions.saveValue(txnum, blk, offset, p.copy(offset, length));
+   }
+
+   /**
+    * Save the size of the file in the version store,
+    * if the transaction has not appended to the file before
+    * and a snapshot may read it.
+    * The caller must hold an XLock on the end of the file,
+    * and save the size before appending to the file.
+    * @param eofblk the block that locks the end of the file
+    * @param size the current number of blocks of the file
+    */
+   public void saveSize(BlockId eofblk, int size) {
+      if (!FileMgr.isTemp(eofblk.fileName()) && versioned.add(eofblk)
+            && versions.mustSave(txnum))
+         versions.saveSize(txnum, eofblk, size);
+   }
+
+   /**
+    * Make the modifications of the transaction visible
+    * to the snapshots that begin from now on.
+    * This method is called when the transaction commits,
+    * before it releases its locks.
+    */
+   public void commit() {
+      if (!versioned.isEmpty() || !versionedValues.isEmpty())
+         versions.commit(txnum);
+   }
 
    /**
     * Obtain an SLock on the block, if necessary.
     * The method will ask the lock table for an SLock
-    * if the transaction currently has no locks on that block.
+    * if the transaction currently has no locks on that block,
+    * after locking the file in the mode IS.
+    * A read-only transaction does not lock the blocks
+    * that it reads from its snapshot; it begins the snapshot
+    * instead, if it has not done so yet, since that may wait
+    * and so must not happen while the buffer is latched.
+    * The blocks of a file that is locked by record are not locked,
+    * and its end is locked only until the method returns.
     * @param blk a reference to the disk block
     */
    public void sLock(BlockId blk) {
-      if (locks.get(blk) == null) {
-         locktbl.sLock(blk);
-         locks.put(blk, "S");
+      if (readsSnapshot(blk)) {
+         snapshot();
+         return;
+      }
+      if (!locksRecords(blk.fileName()))
+         lockChild(blk, blk.fileName(), LockMode.S);
+      else if (blk.number() < 0 && !holds(blk, LockMode.S)) {
+         lock(blk.fileName(), LockMode.IS);
+         locktbl.sLock(blk, txnum);
+         locktbl.unlock(blk, txnum);
       }
    }
 
    /**
-    * Obtain an XLock on the block, if necessary.
-    * If the transaction does not have an XLock on that block,
-    * then the method first gets an SLock on that block
-    * (if necessary), and then upgrades it to an XLock.
+    * Obtain an XLock on the block, if necessary,
+    * after locking the file in the mode IX.
+    * A read-only transaction cannot modify the database,
+    * and can only lock the blocks of temporary files.
+    * The blocks of a file that is locked by record are not locked,
+    * but its end is.
     * @param blk a reference to the disk block
     */
    public void xLock(BlockId blk) {
-      if (!hasXLock(blk)) {
-         sLock(blk);
-         locktbl.xLock(blk);
-         locks.put(blk, "X");
+      checkWritable(blk);
+      if (!locksRecords(blk.fileName()) || blk.number() < 0)
+         lockChild(blk, blk.fileName(), LockMode.X);
+   }
+
+   /**
+    * Obtain an XLock on the block until {@link #unlock(BlockId)}
+    * is called, unless the transaction already has an XLock on it.
+    * The end of a file that is locked by record is locked
+    * this way while a block is appended to it.
+    * @param blk a reference to the disk block
+    * @return true if the block must be unlocked afterwards
+    */
+   public boolean xLockBriefly(BlockId blk) {
+      checkWritable(blk);
+      if (holds(blk, LockMode.X))
+         return false;
+      lock(blk.fileName(), LockMode.IX);
+      locktbl.xLock(blk, txnum);
+      return true;
+   }
+
+   /**
+    * Release a lock obtained by {@link #xLockBriefly(BlockId)}.
+    * @param blk a reference to the disk block
+    */
+   public void unlock(BlockId blk) {
+      locktbl.unlock(blk, txnum);
+   }
+
+   /**
+    * Obtain an SLock on the record at the specified slot
+    * of the block, if necessary.
+    * A read-only transaction does not lock the records
+    * that it reads from its snapshot.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    */
+   public void sLock(BlockId blk, int slot) {
+      if (!readsSnapshot(blk))
+         lockChild(new RecordKey(blk, slot), blk.fileName(), LockMode.S);
+   }
+
+   /**
+    * Obtain an XLock on the record at the specified slot
+    * of the block, if necessary.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    */
+   public void xLock(BlockId blk, int slot) {
+      checkWritable(blk);
+      lockChild(new RecordKey(blk, slot), blk.fileName(), LockMode.X);
+   }
+
+   /**
+    * Obtain an XLock on the record at the specified slot
+    * of the block, if the transaction has it already
+    * or can get it without waiting.
+    * The file may still have to be waited for.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    * @return true if the transaction has the XLock
+    */
+   public boolean tryXLock(BlockId blk, int slot) {
+      checkWritable(blk);
+      RecordKey key = new RecordKey(blk, slot);
+      String filename = blk.fileName();
+      if (holds(key, LockMode.X))
+         return true;
+      lock(filename, LockMode.IX);
+      if (escalates(key, filename)) {
+         escalate(filename, LockMode.X);
+         return true;
       }
+      if (!locktbl.tryXLock(key, txnum))
+         return false;
+      if (locks.put(key, LockMode.X) == null)
+         lockedChildren(filename).add(key);
+      return true;
+   }
+
+   /**
+    * Obtain an SLock on the whole file, so that its blocks
+    * or records need not be locked one by one when they are read.
+    * If the transaction modifies the file, it then holds
+    * the file in the mode SIX.
+    * A read-only transaction does not lock the files
+    * that it reads from its snapshot.
+    * @param filename the name of the file
+    */
+   public void sLockFile(String filename) {
+      if (!readOnly || FileMgr.isTemp(filename))
+         lock(filename, LockMode.S);
    }
 
    /**
     * Release all locks by asking the lock table to
     * unlock each one.
+    * The versions of a transaction that did not commit
+    * are discarded, and the snapshot of a read-only
+    * transaction ends.
     */
    public void release() {
-      for (BlockId blk : locks.keySet()) 
-         locktbl.unlock(blk);
+      for (Object key : locks.keySet()) 
+         locktbl.unlock(key, txnum);
       locks.clear();
+      childLocks.clear();
+      if (!versioned.isEmpty() || !versionedValues.isEmpty())
+         versions.discard(txnum);
+      versioned.clear();
+      versionedValues.clear();
+      if (snapshot >= 0)
+         versions.endSnapshot(snapshot);
+      snapshot = -1;
+   }
+
+   /**
+    * Lock a block or record of the file in the specified mode,
+    * unless the lock on the file covers it.
+    * The file is first locked in the matching intention mode.
+    * The lock on a transaction's first block or record of the file
+    * beyond SimpleDB.LOCK_ESCALATION is escalated to the whole file.
+    */
+   private void lockChild(Object key, String filename, LockMode mode) {
+      if (holds(key, mode))
+         return;
+      lock(filename, mode.intention());
+      if (escalates(key, filename)) {
+         escalate(filename, mode);
+         return;
+      }
+      if (!locks.containsKey(key))
+         lockedChildren(filename).add(key);
+      lock(key, mode);
+   }
+
+   /**
+    * Lock the whole file in the mode S, or X if the transaction
+    * modifies any of the blocks or records that it has locked,
+    * and then release the locks on those blocks or records.
+    */
+   private void escalate(String filename, LockMode mode) {
+      List<Object> keys = childLocks.remove(filename);
+      boolean modifies = (mode == LockMode.X);
+      for (Object key : keys)
+         if (locks.get(key) == LockMode.X)
+            modifies = true;
+      lock(filename, modifies ? LockMode.X : LockMode.S);
+      for (Object key : keys) {
+         locktbl.unlock(key, txnum);
+         locks.remove(key);
+      }
+      escalations.increment();
+   }
+
+   private boolean escalates(Object key, String filename) {
+      int limit = SimpleDB.LOCK_ESCALATION;
+      return limit > 0 && !locks.containsKey(key)
+            && lockedChildren(filename).size() >= limit;
+   }
+
+   private List<Object> lockedChildren(String filename) {
+      return childLocks.computeIfAbsent(filename, f -> new ArrayList<>());
+   }
+
+   private void lock(Object key, LockMode mode) {
+      LockMode held = locks.get(key);
+      if (held != null && held.covers(mode))
+         return;
+      locktbl.lock(key, txnum, mode);
+      locks.put(key, (held == null) ? mode : held.combine(mode));
+   }
+
+   /**
+    * Return true if the transaction holds the block or record
+    * in at least the specified mode, itself or through its file.
+    */
+   private boolean holds(Object key, LockMode mode) {
+      String filename = (key instanceof BlockId) ? ((BlockId) key).fileName()
+                                                 : ((RecordKey) key).fileName();
+      LockMode filemode = locks.get(filename);
+      if (filemode != null && filemode.coversChildren(mode))
+         return true;
+      LockMode held = locks.get(key);
+      return held != null && held.covers(mode);
+   }
+
+   private void checkWritable(BlockId blk) {
+      if (readsSnapshot(blk))
+         throw new RuntimeException("transaction " + txnum + " is read-only");
    }
 
-   private boolean hasXLock(BlockId blk) {
-      String locktype = locks.get(blk);
-      return locktype != null && locktype.equals("X");
+   private int snapshot() {
+      if (snapshot < 0)
+         snapshot = versions.beginSnapshot();
+      return snapshot;
    }
 }
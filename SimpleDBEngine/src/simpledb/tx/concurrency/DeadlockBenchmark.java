@@ -0,0 +1,81 @@
+package simpledb.tx.concurrency;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import simpledb.server.SimpleDB;
+import simpledb.file.BlockId;
+import simpledb.tx.Transaction;
+
+/**
+ * Measures how fast deadlocked transactions are resolved,
+ * with a wait-for graph and with lock timeouts only.
+ * Each thread repeatedly modifies two of a few blocks, in random order,
+ * so that concurrent transactions often deadlock.
+ * A transaction that is aborted rolls back and is retried.
+ * The timeout of the second setting is shorter than a realistic
+ * one, so that the run sees a few of them.
+ * Usage: DeadlockBenchmark [seconds per setting]
+ */
+public class DeadlockBenchmark {
+   private static final int THREADS = 8, BLOCKS = 4;
+
+   public static void main(String[] args) throws InterruptedException {
+      int secs = (args.length > 0) ? Integer.parseInt(args[0]) : 3;
+      PrintStream out = System.out;
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+      SimpleDB db = new SimpleDB("deadlockbenchmark", 400, 64);
+      out.println("setting                commits/s   deadlocks   timeouts   lock waits   mean wait (ms)");
+      run(db, out, secs, "youngest", 0, "youngest victim");
+      run(db, out, secs, "leastwork", 0, "least-work victim");
+      run(db, out, secs, "none", 1000, "1s timeout only");
+      System.exit(0);
+   }
+
+   private static void run(SimpleDB db, PrintStream out, int secs,
+                           String policy, long timeout, String setting) throws InterruptedException {
+      SimpleDB.DEADLOCK_VICTIM = policy;
+      SimpleDB.LOCK_TIMEOUT = timeout;
+      long waits = db.lockMgr().lockWaits(), millis = db.lockMgr().lockWaitMillis();
+      long deadlocks = db.lockMgr().deadlocks(), timeouts = db.lockMgr().lockTimeouts();
+      long end = System.currentTimeMillis() + secs * 1000L;
+      AtomicLong commits = new AtomicLong();
+      Thread[] threads = new Thread[THREADS];
+      for (int t=0; t<THREADS; t++) {
+         Random rand = new Random(t);
+         threads[t] = new Thread(() -> {
+            while (System.currentTimeMillis() < end) {
+               BlockId blk1 = new BlockId("deadlockfile", rand.nextInt(BLOCKS));
+               BlockId blk2 = new BlockId("deadlockfile", rand.nextInt(BLOCKS));
+               Transaction tx = db.newTx();
+               try {
+                  tx.pin(blk1);
+                  tx.pin(blk2);
+                  tx.setInt(blk1, 0, tx.getInt(blk1, 0) + 1, true);
+                  Thread.sleep(1);
+                  tx.setInt(blk2, 0, tx.getInt(blk2, 0) + 1, true);
+                  tx.commit();
+                  commits.incrementAndGet();
+               }
+               catch (LockAbortException e) {
+                  tx.rollback();
+               }
+               catch (InterruptedException e) {
+                  tx.rollback();
+                  return;
+               }
+            }
+         });
+         threads[t].start();
+      }
+      for (Thread t : threads)
+         t.join();
+      waits = db.lockMgr().lockWaits() - waits;
+      millis = db.lockMgr().lockWaitMillis() - millis;
+      out.format("%-20s %11.0f %11d %10d %12d %16.1f%n", setting,
+                 commits.get() / (double) secs,
+                 db.lockMgr().deadlocks() - deadlocks,
+                 db.lockMgr().lockTimeouts() - timeouts,
+                 waits, (waits == 0) ? 0.0 : millis / (double) waits);
+   }
+}
@@ -0,0 +1,62 @@
+package simpledb.tx.concurrency;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import simpledb.file.BlockId;
+
+/**
+ * Measures the throughput of the lock table as the number
+ * of threads grows, with one stripe and with many.
+ * Each thread repeatedly runs a short transaction that reads
+ * a few random blocks of a large file and then writes one,
+ * so that most requests are granted at once and some conflict.
+ * Usage: LockBenchmark [seconds per setting]
+ */
+public class LockBenchmark {
+   private static final int BLOCKS = 10000, READS = 4;
+
+   public static void main(String[] args) throws InterruptedException {
+      int secs = (args.length > 0) ? Integer.parseInt(args[0]) : 2;
+      System.out.println("stripes   threads   transactions/s   lock waits");
+      for (int stripes : new int[] {1, 64})
+         for (int threads : new int[] {1, 2, 4, 8, 16})
+            run(stripes, threads, secs);
+   }
+
+   private static void run(int stripes, int numthreads, int secs) throws InterruptedException {
+      LockTable locktbl = new LockTable(stripes);
+      long end = System.currentTimeMillis() + secs * 1000L;
+      AtomicLong txnums = new AtomicLong(), commits = new AtomicLong();
+      Thread[] threads = new Thread[numthreads];
+      for (int t=0; t<numthreads; t++) {
+         Random rand = new Random(t);
+         threads[t] = new Thread(() -> {
+            List<BlockId> locked = new ArrayList<>();
+            while (System.currentTimeMillis() < end) {
+               int txnum = (int) txnums.incrementAndGet();
+               try {
+                  for (int i=0; i<READS; i++) {
+                     BlockId blk = new BlockId("lockfile", rand.nextInt(BLOCKS));
+                     locktbl.sLock(blk, txnum);
+                     locked.add(blk);
+                  }
+                  BlockId blk = locked.get(rand.nextInt(READS));
+                  locktbl.xLock(blk, txnum);
+                  commits.incrementAndGet();
+               }
+               catch (LockAbortException e) {
+                  // a deadlock victim; release its locks like a rollback
+               }
+               for (BlockId blk : locked)
+                  locktbl.unlock(blk, txnum);
+               locked.clear();
+            }
+         });
+         threads[t].start();
+      }
+      for (Thread t : threads)
+         t.join();
+      System.out.format("%7d %9d %16.0f %12d%n", stripes, numthreads,
+                        commits.get() / (double) secs, locktbl.waits());
+   }
+}
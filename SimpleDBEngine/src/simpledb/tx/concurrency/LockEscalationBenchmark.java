@@ -0,0 +1,97 @@
+package simpledb.tx.concurrency;
+
+import java.io.*;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.record.*;
+import simpledb.tx.Transaction;
+
+/**
+ * Measures how many items a transaction locks as it reads
+ * a large table, and how long it takes, with and without
+ * lock escalation.
+ * A full scan of a query locks the table once; other scans, and
+ * fetching rows by their ids as an index would, lock the blocks
+ * or records one by one, until they are escalated to a lock
+ * on the table.
+ * Usage: LockEscalationBenchmark [rows]
+ */
+public class LockEscalationBenchmark {
+   private static final int FETCHES = 5000, RUNS = 5;
+
+   public static void main(String[] args) {
+      int rows = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+      PrintStream out = System.out;
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+      SimpleDB db = new SimpleDB("lockescalationbenchmark", 400, 64);
+      out.println("setting                         locked items   ms per transaction");
+      for (boolean byRecord : new boolean[] {false, true}) {
+         SimpleDB.RECORD_LOCKING = byRecord;
+         String tblname = byRecord ? "byrecord" : "byblock";
+         String unit = byRecord ? "records" : "blocks";
+         Layout layout = load(db, tblname, rows);
+         List<RID> rids = rids(db, tblname, layout);
+         run(db, out, tblname, layout, null, true, 1000, "full scan, table");
+         run(db, out, tblname, layout, null, false, 1000, "full scan, " + unit);
+         run(db, out, tblname, layout, rids, false, 0, "fetches, " + unit);
+         run(db, out, tblname, layout, rids, false, 100, "fetches, " + unit + ", escalated");
+      }
+      System.exit(0);
+   }
+
+   private static Layout load(SimpleDB db, String tblname, int rows) {
+      Schema sch = new Schema();
+      sch.addIntField("id");
+      sch.addStringField("name", 10);
+      Layout layout = new Layout(sch);
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, tblname, layout);
+      for (int i=0; i<rows; i++) {
+         ts.insert();
+         ts.setInt("id", i);
+         ts.setString("name", "name" + i);
+      }
+      ts.close();
+      tx.commit();
+      return layout;
+   }
+
+   private static List<RID> rids(SimpleDB db, String tblname, Layout layout) {
+      List<RID> rids = new ArrayList<>();
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, tblname, layout);
+      while (ts.next())
+         rids.add(ts.getRid());
+      ts.close();
+      tx.commit();
+      return rids;
+   }
+
+   private static void run(SimpleDB db, PrintStream out, String tblname, Layout layout,
+                           List<RID> rids, boolean locksTable, int escalation, String setting) {
+      SimpleDB.LOCK_ESCALATION = escalation;
+      Random rand = new Random(0);
+      int items = 0;
+      long start = System.nanoTime();
+      for (int r=0; r<RUNS; r++) {
+         Transaction tx = db.newTx();
+         if (locksTable)
+            tx.sLockFile(tblname + ".tbl");
+         TableScan ts = new TableScan(tx, tblname, layout);
+         long sum = 0;
+         if (rids == null)
+            while (ts.next())
+               sum += ts.getInt("id");
+         else
+            for (int i=0; i<FETCHES; i++) {
+               ts.moveToRid(rids.get(rand.nextInt(rids.size())));
+               sum += ts.getInt("id");
+            }
+         ts.close();
+         items = db.lockMgr().lockedItems();
+         tx.commit();
+      }
+      double millis = (System.nanoTime() - start) / 1e6 / RUNS;
+      out.format("%-31s %12d %20.1f%n", setting, items, millis);
+   }
+}
@@ -0,0 +1,71 @@
+package simpledb.tx.concurrency;
+
+import java.util.concurrent.atomic.LongAdder;
+import simpledb.server.SimpleDB;
+
+/**
+ * The lock table and the version store of a database,
+ * which the concurrency managers of its transactions share,
+ * and the counters of how its transactions used the locks.
+ * The lock table has SimpleDB.LOCK_STRIPES stripes.
+ */
+public class LockMgr {
+   LockTable locktbl = new LockTable(SimpleDB.LOCK_STRIPES);
+   VersionStore versions = new VersionStore();
+   LongAdder escalations = new LongAdder();
+
+   /**
+    * Returns the number of lock requests that had to wait,
+    * over all transactions.
+    * @return the number of lock waits
+    */
+   public long lockWaits() {
+      return locktbl.waits();
+   }
+
+   /**
+    * Returns the total number of milliseconds
+    * that transactions spent waiting for locks.
+    * @return the total lock wait time
+    */
+   public long lockWaitMillis() {
+      return locktbl.waitMillis();
+   }
+
+   /**
+    * Returns the number of deadlocks that were detected,
+    * each of which aborted one transaction.
+    * @return the number of deadlocks
+    */
+   public long deadlocks() {
+      return locktbl.deadlocks();
+   }
+
+   /**
+    * Returns the number of lock requests that were
+    * aborted because they waited too long.
+    * @return the number of lock timeouts
+    */
+   public long lockTimeouts() {
+      return locktbl.timeouts();
+   }
+
+   /**
+    * Returns the number of times that the locks of a transaction
+    * on the blocks or records of a file were replaced
+    * by a lock on the whole file.
+    * @return the number of lock escalations
+    */
+   public long lockEscalations() {
+      return escalations.sum();
+   }
+
+   /**
+    * Returns the number of files, blocks and records
+    * that are currently locked or waited for, over all transactions.
+    * @return the number of entries in the lock table
+    */
+   public int lockedItems() {
+      return locktbl.size();
+   }
+}
@@ -0,0 +1,66 @@
+package simpledb.tx.concurrency;
+
+/**
+ * The modes of a lock.
+ * A file is locked in an intention mode (IS or IX) before
+ * its blocks or records are locked in the mode S or X;
+ * it can also be locked as a whole, in the mode S, X,
+ * or SIX, which reads the whole file and modifies parts of it.
+ */
+enum LockMode {
+   IS, IX, S, SIX, X;
+
+   private static final boolean[][] COMPATIBLE = {
+      //         IS     IX     S      SIX    X
+      /* IS  */ {true,  true,  true,  true,  false},
+      /* IX  */ {true,  true,  false, false, false},
+      /* S   */ {true,  false, true,  false, false},
+      /* SIX */ {true,  false, false, false, false},
+      /* X   */ {false, false, false, false, false},
+   };
+
+   /**
+    * Return true if two transactions can hold
+    * the lock in this mode and in the other one.
+    */
+   boolean compatibleWith(LockMode other) {
+      return COMPATIBLE[ordinal()][other.ordinal()];
+   }
+
+   /**
+    * Return the weakest mode that is at least as strong
+    * as this mode and the other one.
+    */
+   LockMode combine(LockMode other) {
+      if (this == other || other == IS)
+         return this;
+      if (this == IS)
+         return other;
+      if (this == X || other == X)
+         return X;
+      return SIX;  // two of IX, S and SIX
+   }
+
+   /**
+    * Return true if this mode is at least as strong as the other one.
+    */
+   boolean covers(LockMode other) {
+      return combine(other) == this;
+   }
+
+   /**
+    * Return true if a lock on a file in this mode
+    * also locks its blocks or records in the other mode.
+    */
+   boolean coversChildren(LockMode other) {
+      return this == X || (other == S && (this == S || this == SIX));
+   }
+
+   /**
+    * Return the mode in which a file is locked
+    * before its blocks or records are locked in this mode.
+    */
+   LockMode intention() {
+      return (this == S || this == IS) ? IS : IX;
+   }
+}
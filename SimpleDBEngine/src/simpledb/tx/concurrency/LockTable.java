@@ -1,103 +1,499 @@
 package simpledb.tx.concurrency;
 
 import java.util.*;
-import simpledb.file.BlockId;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.*;
+import simpledb.server.SimpleDB;
 
 /**
- * The lock table, which provides methods to lock and unlock blocks.
- * If a transaction requests a lock that causes a conflict with an
- * existing lock, then that transaction is placed on a wait list.
- * There is only one wait list for all blocks.
- * When the last lock on a block is unlocked, then all transactions
- * are removed from the wait list and rescheduled.
- * If one of those transactions discovers that the lock it is waiting for
- * is still locked, it will place itself back on the wait list.
+ * The lock table, which provides methods to lock and unlock files,
+ * blocks, and the records of tables that are locked by record.
+ * A lock is identified by a key, which is the name of a file,
+ * a {@link simpledb.file.BlockId} or a {@link RecordKey},
+ * and is held in one of the modes of {@link LockMode}.
+ * The table is split into stripes by the hash of the key,
+ * each guarded by a latch of its own, so that transactions
+ * locking different blocks rarely contend.
+ * <p>
+ * Each lock has a FIFO queue of the requests that wait for it.
+ * A new request waits if it conflicts with the holders of the lock,
+ * or with a request already waiting, so that a stream of
+ * SLocks cannot starve an XLock.
+ * A holder of a lock is granted a compatible request at once,
+ * and one that asks to strengthen it, such as an SLock
+ * upgraded to an XLock, goes to the front of the queue,
+ * since the requests behind it wait for it anyway.
+ * When a lock is released, the compatible requests at the head of
+ * its queue are granted in order, and only their threads are woken.
+ * <p>
+ * The waiting requests and the holders they wait for form a
+ * wait-for graph, which is searched for a cycle whenever a
+ * transaction starts to wait. If a transaction in the cycle
+ * waits only for requests ahead of it in a queue, and not for the
+ * holders of the lock, it is granted the lock ahead of them,
+ * which breaks the cycle without aborting anyone.
+ * Otherwise a victim in the
+ * cycle is aborted at once, as chosen by SimpleDB.DEADLOCK_VICTIM:
+ * "youngest" aborts the transaction with the highest id,
+ * "leastwork" the one holding the fewest locks,
+ * and "none" disables the detection.
+ * A wait is also aborted after SimpleDB.LOCK_TIMEOUT milliseconds,
+ * unless it is 0.
  * @author Edward Sciore
  */
 class LockTable {
-   private static final long MAX_TIME = 10000; // 10 seconds
-   
-   private Map<BlockId,Integer> locks = new HashMap<BlockId,Integer>();
-   
-   /**
-    * Grant an SLock on the specified block.
-    * If an XLock exists when the method is called,
-    * then the calling thread will be placed on a wait list
-    * until the lock is released.
-    * If the thread remains on the wait list for a certain 
-    * amount of time (currently 10 seconds),
-    * then an exception is thrown.
-    * @param blk a reference to the disk block
-    */
-   public synchronized void sLock(BlockId blk) {
+   private Stripe[] stripes;
+   private Map<Integer,Request> waiting = new ConcurrentHashMap<>();
+   private Map<Integer,Integer> lockCounts = new ConcurrentHashMap<>();
+   private Object detector = new Object();
+   private LongAdder waits = new LongAdder(), waitMillis = new LongAdder();
+   private LongAdder deadlocks = new LongAdder(), timeouts = new LongAdder();
+
+   private static class Stripe {
+      ReentrantLock latch = new ReentrantLock();
+      Map<Object,Lock> locks = new HashMap<>();
+   }
+
+   private static class Lock {
+      Map<Integer,LockMode> holders = new HashMap<>();
+      Deque<Request> queue = new ArrayDeque<>();
+   }
+
+   private static class Request {
+      Object key;
+      int txnum;
+      LockMode mode;
+      Condition cond;
+      boolean granted = false;
+      boolean aborted = false;
+
+      Request(Object key, int txnum, LockMode mode, Condition cond) {
+         this.key = key;
+         this.txnum = txnum;
+         this.mode = mode;
+         this.cond = cond;
+      }
+   }
+
+   /**
+    * Creates a lock table with the specified number of stripes.
+    * @param numstripes the number of stripes
+    */
+   LockTable(int numstripes) {
+      stripes = new Stripe[Math.max(1, numstripes)];
+      for (int i=0; i<stripes.length; i++)
+         stripes[i] = new Stripe();
+   }
+
+   /**
+    * Grant an SLock on the specified block or record.
+    * If another transaction has an XLock, or if an XLock request
+    * is waiting for the lock, then the calling thread
+    * will be placed on the queue of the lock until it is granted.
+    * If waiting would deadlock, or if the thread remains on the
+    * queue for too long, then an exception is thrown.
+    * @param key the block or record
+    * @param txnum the id of the requesting transaction
+    */
+   public void sLock(Object key, int txnum) {
+      lock(key, txnum, LockMode.S);
+   }
+
+   /**
+    * Grant an XLock on the specified block or record.
+    * If another transaction has a lock of any type,
+    * or if other requests are waiting for the lock, then the
+    * calling thread will be placed on the queue of the lock
+    * until it is granted.
+    * If waiting would deadlock, or if the thread remains on the
+    * queue for too long, then an exception is thrown.
+    * @param key the block or record
+    * @param txnum the id of the requesting transaction
+    */
+   void xLock(Object key, int txnum) {
+      lock(key, txnum, LockMode.X);
+   }
+
+   /**
+    * Grant a lock in the specified mode on the specified
+    * file, block or record. If the transaction already holds
+    * the lock in another mode, it then holds it in the
+    * combination of both.
+    * If the mode conflicts with those of the other holders,
+    * or with a request waiting for the lock, then the
+    * calling thread will be placed on the queue of the lock
+    * until it is granted.
+    * If waiting would deadlock, or if the thread remains on the
+    * queue for too long, then an exception is thrown.
+    * @param key the file, block or record
+    * @param txnum the id of the requesting transaction
+    * @param mode the requested mode
+    */
+   void lock(Object key, int txnum, LockMode mode) {
+      Stripe s = stripe(key);
+      Request r;
+      s.latch.lock();
       try {
-         long timestamp = System.currentTimeMillis();
-         while (hasXlock(blk) && !waitingTooLong(timestamp))
-            wait(MAX_TIME);
-         if (hasXlock(blk))
-            throw new LockAbortException();
-         int val = getLockVal(blk);  // will not be negative
-         locks.put(blk, val+1);
+         Lock lock = s.locks.computeIfAbsent(key, k -> new Lock());
+         LockMode held = lock.holders.get(txnum);
+         LockMode target = (held == null) ? mode : held.combine(mode);
+         if (admits(lock, txnum, target)) {
+            grant(lock, txnum, target);
+            return;
+         }
+         r = new Request(key, txnum, target, s.latch.newCondition());
+         if (held != null)
+            lock.queue.addFirst(r);
+         else
+            lock.queue.addLast(r);
+         waiting.put(txnum, r);
       }
-      catch(InterruptedException e) {
-         throw new LockAbortException();
+      finally {
+         s.latch.unlock();
+      }
+      waits.increment();
+      long start = System.currentTimeMillis();
+      try {
+         detectDeadlock(r);
+         await(s, r, start);
+      }
+      finally {
+         waiting.remove(txnum);
+         waitMillis.add(System.currentTimeMillis() - start);
       }
    }
-   
+
    /**
-    * Grant an XLock on the specified block.
-    * If a lock of any type exists when the method is called,
-    * then the calling thread will be placed on a wait list
-    * until the locks are released.
-    * If the thread remains on the wait list for a certain 
-    * amount of time (currently 10 seconds),
-    * then an exception is thrown.
-    * @param blk a reference to the disk block
+    * Grant an XLock on the specified block or record
+    * if it can be granted at once, without waiting.
+    * @param key the block or record
+    * @param txnum the id of the requesting transaction
+    * @return true if the lock was granted
     */
-   synchronized void xLock(BlockId blk) {
+   boolean tryXLock(Object key, int txnum) {
+      Stripe s = stripe(key);
+      s.latch.lock();
       try {
-         long timestamp = System.currentTimeMillis();
-         while (hasOtherSLocks(blk) && !waitingTooLong(timestamp))
-            wait(MAX_TIME);
-         if (hasOtherSLocks(blk))
-            throw new LockAbortException();
-         locks.put(blk, -1);
+         Lock lock = s.locks.computeIfAbsent(key, k -> new Lock());
+         if (admits(lock, txnum, LockMode.X)) {
+            grant(lock, txnum, LockMode.X);
+            return true;
+         }
+         if (lock.holders.isEmpty() && lock.queue.isEmpty())
+            s.locks.remove(key);
+         return false;
+      }
+      finally {
+         s.latch.unlock();
+      }
+   }
+
+   /**
+    * Release the lock of the transaction on the specified block or record,
+    * and grant the requests at the head of its queue
+    * that have become compatible.
+    * @param key the block or record
+    * @param txnum the id of the transaction
+    */
+   void unlock(Object key, int txnum) {
+      Stripe s = stripe(key);
+      s.latch.lock();
+      try {
+         Lock lock = s.locks.get(key);
+         if (lock == null || lock.holders.remove(txnum) == null)
+            return;
+         if (lockCounts.merge(txnum, -1, Integer::sum) == 0)
+            lockCounts.remove(txnum);
+         grantWaiting(s, lock, key);
+      }
+      finally {
+         s.latch.unlock();
+      }
+   }
+
+   /**
+    * Returns the number of files, blocks and records
+    * that are currently locked.
+    */
+   int size() {
+      int size = 0;
+      for (Stripe s : stripes) {
+         s.latch.lock();
+         try {
+            size += s.locks.size();
+         }
+         finally {
+            s.latch.unlock();
+         }
+      }
+      return size;
+   }
+
+   /**
+    * Returns the number of lock requests that had to wait.
+    */
+   long waits() {
+      return waits.sum();
+   }
+
+   /**
+    * Returns the total number of milliseconds spent waiting for locks.
+    */
+   long waitMillis() {
+      return waitMillis.sum();
+   }
+
+   /**
+    * Returns the number of deadlocks that were detected.
+    */
+   long deadlocks() {
+      return deadlocks.sum();
+   }
+
+   /**
+    * Returns the number of lock requests that timed out.
+    */
+   long timeouts() {
+      return timeouts.sum();
+   }
+
+   /**
+    * Wait until the request is granted, aborted, or timed out.
+    */
+   private void await(Stripe s, Request r, long start) {
+      s.latch.lock();
+      try {
+         while (!r.granted) {
+            if (r.aborted) {
+               abandon(s, r);
+               throw new LockAbortException("deadlock victim");
+            }
+            long timeout = SimpleDB.LOCK_TIMEOUT;
+            if (timeout > 0) {
+               long remaining = start + timeout - System.currentTimeMillis();
+               if (remaining <= 0) {
+                  abandon(s, r);
+                  timeouts.increment();
+                  throw new LockAbortException("lock wait timeout");
+               }
+               r.cond.await(remaining, TimeUnit.MILLISECONDS);
+            }
+            else
+               r.cond.await();
+         }
       }
       catch(InterruptedException e) {
+         abandon(s, r);
          throw new LockAbortException();
       }
+      finally {
+         s.latch.unlock();
+      }
+   }
+
+   /**
+    * Remove a request that will not be granted from its queue,
+    * which may let the requests behind it be granted.
+    */
+   private void abandon(Stripe s, Request r) {
+      Lock lock = s.locks.get(r.key);
+      lock.queue.remove(r);
+      grantWaiting(s, lock, r.key);
+   }
+
+   private void grantWaiting(Stripe s, Lock lock, Object key) {
+      while (!lock.queue.isEmpty()) {
+         Request r = lock.queue.peekFirst();
+         if (!compatible(lock, r.txnum, r.mode))
+            break;
+         lock.queue.removeFirst();
+         grant(lock, r.txnum, r.mode);
+         r.granted = true;
+         r.cond.signal();
+      }
+      if (lock.holders.isEmpty() && lock.queue.isEmpty())
+         s.locks.remove(key);
+   }
+
+   /**
+    * Returns true if the request can be granted without waiting:
+    * it must be compatible with the other holders of the lock,
+    * and, unless the transaction already holds the lock,
+    * with the requests waiting for it.
+    */
+   private boolean admits(Lock lock, int txnum, LockMode mode) {
+      if (!compatible(lock, txnum, mode))
+         return false;
+      if (lock.holders.containsKey(txnum))
+         return true;
+      for (Request q : lock.queue)
+         if (!q.mode.compatibleWith(mode))
+            return false;
+      return true;
+   }
+
+   private boolean compatible(Lock lock, int txnum, LockMode mode) {
+      for (Map.Entry<Integer,LockMode> e : lock.holders.entrySet())
+         if (e.getKey() != txnum && !e.getValue().compatibleWith(mode))
+            return false;
+      return true;
+   }
+
+   private void grant(Lock lock, int txnum, LockMode mode) {
+      if (lock.holders.put(txnum, mode) == null)
+         lockCounts.merge(txnum, 1, Integer::sum);
+   }
+
+   private Stripe stripe(Object key) {
+      return stripes[Math.floorMod(key.hashCode(), stripes.length)];
+   }
+
+   /**
+    * Searches the wait-for graph for a cycle through the new request,
+    * and breaks it by reordering a queue or by aborting a victim,
+    * until there is no such cycle.
+    * Searches are serialized, and read one stripe at a time,
+    * so that a cycle closed by two concurrent requests
+    * is found by the later one.
+    */
+   private void detectDeadlock(Request r) {
+      String policy = SimpleDB.DEADLOCK_VICTIM.toLowerCase();
+      if (policy.equals("none"))
+         return;
+      synchronized (detector) {
+         // aborting a victim can leave another cycle through the request
+         List<Integer> cycle = new ArrayList<>();
+         while (findCycle(r.txnum, r.txnum, new HashSet<>(), cycle)) {
+            if (!grantAhead(cycle))
+               abortVictim(chooseVictim(cycle, policy));
+            cycle.clear();
+         }
+      }
    }
-   
+
    /**
-    * Release a lock on the specified block.
-    * If this lock is the last lock on that block,
-    * then the waiting transactions are notified.
-    * @param blk a reference to the disk block
+    * Grant the request of a transaction in the cycle that is
+    * compatible with the holders of its lock, and so waits only
+    * for the requests ahead of it, ahead of those requests.
+    * @return true if a request was granted
     */
-   synchronized void unlock(BlockId blk) {
-      int val = getLockVal(blk);
-      if (val > 1)
-         locks.put(blk, val-1);
-      else {
-         locks.remove(blk);
-         notifyAll();
+   private boolean grantAhead(List<Integer> cycle) {
+      for (int tx : cycle) {
+         Request wr = waiting.get(tx);
+         if (wr == null)
+            continue;
+         Stripe s = stripe(wr.key);
+         s.latch.lock();
+         try {
+            Lock lock = s.locks.get(wr.key);
+            if (!wr.granted && !wr.aborted && compatible(lock, wr.txnum, wr.mode)) {
+               lock.queue.remove(wr);
+               grant(lock, wr.txnum, wr.mode);
+               wr.granted = true;
+               wr.cond.signal();
+               return true;
+            }
+         }
+         finally {
+            s.latch.unlock();
+         }
       }
+      return false;
    }
-   
-   private boolean hasXlock(BlockId blk) {
-      return getLockVal(blk) < 0;
+
+   private int chooseVictim(List<Integer> cycle, String policy) {
+      int victim = cycle.get(0);
+      for (int tx : cycle) {
+         switch (policy) {
+         case "youngest":
+            if (tx > victim)
+               victim = tx;
+            break;
+         case "leastwork":
+            int work = lockCounts.getOrDefault(tx, 0);
+            int victimWork = lockCounts.getOrDefault(victim, 0);
+            if (work < victimWork || (work == victimWork && tx > victim))
+               victim = tx;
+            break;
+         default:
+            throw new IllegalArgumentException("unknown deadlock victim policy: " + policy);
+         }
+      }
+      return victim;
    }
-   
-   private boolean hasOtherSLocks(BlockId blk) {
-      return getLockVal(blk) > 1;
+
+   /**
+    * Abort the request of the victim, unless it was granted meanwhile.
+    * An aborted request waits for nobody, so the search
+    * does not find its cycle again.
+    */
+   private void abortVictim(int victim) {
+      Request vr = waiting.get(victim);
+      if (vr == null)
+         return;
+      Stripe s = stripe(vr.key);
+      s.latch.lock();
+      try {
+         if (!vr.granted && !vr.aborted) {
+            vr.aborted = true;
+            vr.cond.signal();
+            deadlocks.increment();
+         }
+      }
+      finally {
+         s.latch.unlock();
+      }
    }
-   
-   private boolean waitingTooLong(long starttime) {
-      return System.currentTimeMillis() - starttime > MAX_TIME;
+
+   /**
+    * Depth-first search from the current transaction
+    * for a path of waits back to the start transaction.
+    * The path is left in the list if there is one.
+    */
+   private boolean findCycle(int start, int current, Set<Integer> visited, List<Integer> path) {
+      path.add(current);
+      Request r = waiting.get(current);
+      if (r != null)
+         for (int blocker : blockers(r)) {
+            if (blocker == start)
+               return true;
+            if (visited.add(blocker) && findCycle(start, blocker, visited, path))
+               return true;
+         }
+      path.remove(path.size() - 1);
+      return false;
    }
-   
-   private int getLockVal(BlockId blk) {
-      Integer ival = locks.get(blk);
-      return (ival == null) ? 0 : ival.intValue();
+
+   /**
+    * Returns the transactions that the request waits for:
+    * the conflicting holders of the lock,
+    * and the conflicting requests ahead of it in the queue.
+    * A request that was granted or aborted waits for nobody.
+    */
+   private Set<Integer> blockers(Request r) {
+      Stripe s = stripe(r.key);
+      s.latch.lock();
+      try {
+         Set<Integer> result = new HashSet<>();
+         Lock lock = s.locks.get(r.key);
+         if (r.granted || r.aborted || lock == null)
+            return result;
+         for (Map.Entry<Integer,LockMode> e : lock.holders.entrySet())
+            if (!e.getValue().compatibleWith(r.mode))
+               result.add(e.getKey());
+         for (Request q : lock.queue) {
+            if (q == r)
+               break;
+            if (!q.mode.compatibleWith(r.mode))
+               result.add(q.txnum);
+         }
+         result.remove(r.txnum);
+         return result;
+      }
+      finally {
+         s.latch.unlock();
+      }
    }
 }
@@ -0,0 +1,36 @@
+package simpledb.tx.concurrency;
+
+import simpledb.file.BlockId;
+
+/**
+ * Identifies a record in the lock table,
+ * by its block and its slot in that block.
+ */
+class RecordKey {
+   private BlockId blk;
+   private int slot;
+
+   RecordKey(BlockId blk, int slot) {
+      this.blk = blk;
+      this.slot = slot;
+   }
+
+   String fileName() {
+      return blk.fileName();
+   }
+
+   public boolean equals(Object obj) {
+      if (!(obj instanceof RecordKey))
+         return false;
+      RecordKey key = (RecordKey) obj;
+      return blk.equals(key.blk) && slot == key.slot;
+   }
+
+   public String toString() {
+      return "[file " + blk.fileName() + ", block " + blk.number() + ", slot " + slot + "]";
+   }
+
+   public int hashCode() {
+      return 31 * blk.hashCode() + slot;
+   }
+}
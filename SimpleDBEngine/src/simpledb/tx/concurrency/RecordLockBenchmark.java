@@ -0,0 +1,87 @@
+package simpledb.tx.concurrency;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import simpledb.server.SimpleDB;
+import simpledb.record.*;
+import simpledb.tx.Transaction;
+
+/**
+ * Measures the throughput of concurrent writers on a small,
+ * hot table, with block locking and with record locking.
+ * Each transaction adds one to the balance of a random row;
+ * every block of the table holds several rows, so with block
+ * locking the writers of different rows of a block wait for
+ * each other, and their upgrades from SLocks deadlock.
+ * Usage: RecordLockBenchmark [seconds per setting]
+ */
+public class RecordLockBenchmark {
+   private static final int ROWS = 50, WRITERS = 8;
+
+   public static void main(String[] args) throws InterruptedException {
+      int secs = (args.length > 0) ? Integer.parseInt(args[0]) : 3;
+      PrintStream out = System.out;
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+      SimpleDB db = new SimpleDB("recordlockbenchmark", 400, 64);
+      out.println("locking   commits/s   aborts   lock waits   mean wait (ms)");
+      for (boolean byRecord : new boolean[] {false, true}) {
+         SimpleDB.RECORD_LOCKING = byRecord;
+         out.println(run(db, byRecord ? "record" : "block", secs));
+      }
+      System.exit(0);
+   }
+
+   private static String run(SimpleDB db, String tblname, int secs) throws InterruptedException {
+      Schema sch = new Schema();
+      sch.addIntField("id");
+      sch.addIntField("balance");
+      sch.addStringField("name", 20);
+      Layout layout = new Layout(sch);
+      List<RID> rids = new ArrayList<>();
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, tblname, layout);
+      for (int i=0; i<ROWS; i++) {
+         ts.insert();
+         ts.setInt("id", i);
+         ts.setInt("balance", 0);
+         ts.setString("name", "student" + i);
+         rids.add(ts.getRid());
+      }
+      ts.close();
+      tx.commit();
+
+      long waits = db.lockMgr().lockWaits(), millis = db.lockMgr().lockWaitMillis();
+      long end = System.currentTimeMillis() + secs * 1000L;
+      AtomicLong commits = new AtomicLong(), aborts = new AtomicLong();
+      Thread[] threads = new Thread[WRITERS];
+      for (int t=0; t<WRITERS; t++) {
+         Random rand = new Random(t);
+         threads[t] = new Thread(() -> {
+            while (System.currentTimeMillis() < end) {
+               Transaction wtx = db.newTx();
+               try {
+                  TableScan scan = new TableScan(wtx, tblname, layout);
+                  scan.moveToRid(rids.get(rand.nextInt(ROWS)));
+                  scan.setInt("balance", scan.getInt("balance") + 1);
+                  scan.close();
+                  wtx.commit();
+                  commits.incrementAndGet();
+               }
+               catch (LockAbortException e) {
+                  wtx.rollback();
+                  aborts.incrementAndGet();
+               }
+            }
+         });
+         threads[t].start();
+      }
+      for (Thread t : threads)
+         t.join();
+      waits = db.lockMgr().lockWaits() - waits;
+      millis = db.lockMgr().lockWaitMillis() - millis;
+      return String.format("%-7s %11.0f %8d %12d %16.1f", tblname,
+                           commits.get() / (double) secs, aborts.get(),
+                           waits, (waits == 0) ? 0.0 : millis / (double) waits);
+   }
+}
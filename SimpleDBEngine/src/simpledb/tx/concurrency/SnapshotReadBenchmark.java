@@ -0,0 +1,113 @@
+package simpledb.tx.concurrency;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import simpledb.server.SimpleDB;
+import simpledb.record.*;
+import simpledb.tx.Transaction;
+
+/**
+ * Measures the throughput of short update transactions
+ * while a reporting thread repeatedly scans the whole table,
+ * without a reader, with a locking reader and with a read-only reader.
+ * The locking reader keeps its SLocks until it commits,
+ * so that the writers wait for the end of each scan;
+ * the read-only reader reads a snapshot and takes no locks.
+ * Without a reader, the writers save no versions.
+ * Each writer moves an amount between two rows, so the reader
+ * also checks that every scan sees the same total.
+ * Usage: SnapshotReadBenchmark [seconds per run]
+ */
+public class SnapshotReadBenchmark {
+   private static final int ROWS = 2000, WRITERS = 2;
+
+   public static void main(String[] args) throws InterruptedException {
+      int secs = (args.length > 0) ? Integer.parseInt(args[0]) : 3;
+      PrintStream out = System.out;
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+      SimpleDB db = new SimpleDB("snapshotreadbenchmark", 400, 200);
+      Schema sch = new Schema();
+      sch.addIntField("id");
+      sch.addIntField("balance");
+      Layout layout = new Layout(sch);
+      List<RID> rids = new ArrayList<>();
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "account", layout);
+      for (int i=0; i<ROWS; i++) {
+         ts.insert();
+         ts.setInt("id", i);
+         ts.setInt("balance", 100);
+         rids.add(ts.getRid());
+      }
+      ts.close();
+      tx.commit();
+
+      out.println("reader       writer commits/s   scans/s   lock aborts   wrong totals");
+      for (String reader : new String[] {"none", "locking", "read-only"})
+         out.println(run(db, layout, rids, reader, secs));
+      System.exit(0);
+   }
+
+   private static String run(SimpleDB db, Layout layout, List<RID> rids,
+                             String reader, int secs) throws InterruptedException {
+      long end = System.currentTimeMillis() + secs * 1000L;
+      AtomicLong commits = new AtomicLong(), scans = new AtomicLong();
+      AtomicLong aborts = new AtomicLong(), wrong = new AtomicLong();
+      List<Thread> threads = new ArrayList<>();
+      for (int w=0; w<WRITERS; w++) {
+         Random rand = new Random(w);
+         threads.add(new Thread(() -> {
+            while (System.currentTimeMillis() < end) {
+               // lock the rows in order, so that writers do not deadlock
+               int i = rand.nextInt(ROWS), j = rand.nextInt(ROWS);
+               Transaction tx = db.newTx();
+               try {
+                  TableScan ts = new TableScan(tx, "account", layout);
+                  ts.moveToRid(rids.get(Math.min(i, j)));
+                  ts.setInt("balance", ts.getInt("balance") - 1);
+                  ts.moveToRid(rids.get(Math.max(i, j)));
+                  ts.setInt("balance", ts.getInt("balance") + 1);
+                  ts.close();
+                  tx.commit();
+                  commits.incrementAndGet();
+               }
+               catch (LockAbortException e) {
+                  tx.rollback();
+                  aborts.incrementAndGet();
+               }
+            }
+         }));
+      }
+      boolean readOnly = reader.equals("read-only");
+      if (!reader.equals("none"))
+         threads.add(new Thread(() -> {
+            while (System.currentTimeMillis() < end) {
+               Transaction tx = db.newTx();
+               tx.setReadOnly(readOnly);
+               try {
+                  TableScan ts = new TableScan(tx, "account", layout);
+                  long total = 0;
+                  while (ts.next())
+                     total += ts.getInt("balance");
+                  ts.close();
+                  tx.commit();
+                  scans.incrementAndGet();
+                  if (total != 100L * ROWS)
+                     wrong.incrementAndGet();
+               }
+               catch (LockAbortException e) {
+                  tx.rollback();
+                  aborts.incrementAndGet();
+               }
+            }
+         }));
+      for (Thread t : threads)
+         t.start();
+      for (Thread t : threads)
+         t.join();
+      return String.format("%-10s %18.0f %9.1f %13d %14d", reader,
+                           commits.get() / (double) secs, scans.get() / (double) secs,
+                           aborts.get(), wrong.get());
+   }
+}
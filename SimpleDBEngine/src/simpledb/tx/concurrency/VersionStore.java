@@ -0,0 +1,249 @@
+package simpledb.tx.concurrency;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import simpledb.file.*;
+
+/**
+ * The version store, which keeps the old versions of blocks
+ * that read-only transactions may still need to read.
+ * Before a transaction first modifies a block, it saves the
+ * contents of the block in the store; before it first appends
+ * to a file, it saves the size of the file.
+ * The blocks of a table that is locked by record can be modified
+ * by several transactions at once, so for them a transaction
+ * saves each value that it modifies instead of the block.
+ * When the transaction commits, its versions receive the next
+ * commit time; when it rolls back, they are discarded.
+ * <p>
+ * A read-only transaction reads the database as of a commit time,
+ * its snapshot. The version of a block that it reads is the first one
+ * saved by a transaction that committed after the snapshot, or that
+ * has not committed; if there is none, it reads the current block.
+ * Since a transaction keeps its XLock on a block until it commits,
+ * the versions of a block are saved in the order of their commit times.
+ * Likewise for the versions of a value, whose record stays locked;
+ * the block in a snapshot is then the current block, over which
+ * the saved values are copied from the latest one to the first.
+ * A committed version is discarded once every snapshot
+ * is at least as recent as it.
+ * <p>
+ * While no snapshot is active, no version can be read, so
+ * transactions do not save any; a snapshot that begins then
+ * waits until the transactions that modified the database without
+ * saving versions have ended. A thread must therefore not begin
+ * a snapshot while a transaction of its own is such a transaction.
+ * The block of a table locked by record is rebuilt once per snapshot:
+ * later modifications of the block only save values that the
+ * snapshot does not read, so the rebuilt block is kept
+ * until the last snapshot of its commit time ends.
+ */
+class VersionStore {
+   private int lastCommit = 0;
+   private Map<BlockId,List<Version>> chains = new ConcurrentHashMap<>();
+   private Map<Integer,List<Version>> uncommitted = new HashMap<>();
+   private Deque<Version> committed = new ArrayDeque<>();
+   private TreeMap<Integer,Integer> snapshots = new TreeMap<>();
+   private Set<Integer> unversioned = new HashSet<>();
+   private int beginning = 0;
+   private Map<Integer,Map<BlockId,byte[]>> images = new ConcurrentHashMap<>();
+
+   private static class Version {
+      BlockId blk;
+      int offset;  // of a saved value, or -1 for a block or a size
+      byte[] image;
+      int size;
+      volatile int commitTime = Integer.MAX_VALUE;
+
+      Version(BlockId blk, int offset, byte[] image, int size) {
+         this.blk = blk;
+         this.offset = offset;
+         this.image = image;
+         this.size = size;
+      }
+   }
+
+   /**
+    * Start a snapshot at the time of the last commit,
+    * once the transactions that did not save their versions
+    * have ended.
+    * @return the commit time of the snapshot
+    */
+   synchronized int beginSnapshot() {
+      beginning++;
+      try {
+         while (!unversioned.isEmpty())
+            wait();
+      }
+      catch(InterruptedException e) {
+         throw new LockAbortException("snapshot interrupted");
+      }
+      finally {
+         beginning--;
+      }
+      snapshots.merge(lastCommit, 1, Integer::sum);
+      return lastCommit;
+   }
+
+   /**
+    * End a snapshot, and discard the versions
+    * that no remaining snapshot can read.
+    * @param snapshot the commit time of the snapshot
+    */
+   synchronized void endSnapshot(int snapshot) {
+      if (snapshots.merge(snapshot, -1, Integer::sum) == 0) {
+         snapshots.remove(snapshot);
+         images.remove(snapshot);
+      }
+      collect();
+   }
+
+   /**
+    * Return true if the specified transaction must save a version
+    * before it modifies the database, because a snapshot is
+    * active or beginning. Otherwise the transaction is recorded
+    * as one that the next snapshot must wait for.
+    * @param txnum the id of the modifying transaction
+    * @return true if the version must be saved
+    */
+   synchronized boolean mustSave(int txnum) {
+      if (!snapshots.isEmpty() || beginning > 0)
+         return true;
+      unversioned.add(txnum);
+      return false;
+   }
+
+   /**
+    * Save the contents of a block,
+    * before the specified transaction modifies it.
+    */
+   synchronized void saveBlock(int txnum, BlockId blk, byte[] image) {
+      save(txnum, new Version(blk, -1, image, -1));
+   }
+
+   /**
+    * Save a value of a block that is locked by record,
+    * before the specified transaction modifies it.
+    * @param offset the offset of the value in the block
+    * @param image the bytes of the value
+    */
+   synchronized void saveValue(int txnum, BlockId blk, int offset, byte[] image) {
+      save(txnum, new Version(blk, offset, image, -1));
+   }
+
+   /**
+    * Save the size of a file,
+    * before the specified transaction appends to it.
+    * The file is denoted by the block that locks its end.
+    */
+   synchronized void saveSize(int txnum, BlockId eofblk, int size) {
+      save(txnum, new Version(eofblk, -1, null, size));
+   }
+
+   /**
+    * Return the contents of the block as of the snapshot,
+    * or null if they are the current contents of the block.
+    * The caller synchronizes on the buffer of the block,
+    * so that no version of the block is saved meanwhile.
+    * @param blk a reference to the disk block
+    * @param snapshot the commit time of the snapshot
+    * @param current the current contents of the block
+    * @return the old contents of the block, or null
+    */
+   byte[] image(BlockId blk, int snapshot, Page current) {
+      List<Version> chain = chains.get(blk);
+      Version v = visible(chain, snapshot);
+      if (v == null || v.offset < 0)
+         return (v == null) ? null : v.image;
+      Map<BlockId,byte[]> cache =
+            images.computeIfAbsent(snapshot, s -> new ConcurrentHashMap<>());
+      byte[] result = cache.get(blk);
+      if (result != null)
+         return result;
+      result = current.copy();
+      for (int i=chain.size()-1; i>=0; i--) {
+         Version old = chain.get(i);
+         if (old.commitTime > snapshot)
+            System.arraycopy(old.image, 0, result, old.offset, old.image.length);
+      }
+      cache.put(blk, result);
+      return result;
+   }
+
+   /**
+    * Return the size of the file as of the snapshot.
+    * @param eofblk the block that locks the end of the file
+    * @param snapshot the commit time of the snapshot
+    * @param fm the file manager, which knows the current size
+    * @return the number of blocks of the file in the snapshot
+    */
+   synchronized int size(BlockId eofblk, int snapshot, FileMgr fm) {
+      Version v = visible(chains.get(eofblk), snapshot);
+      return (v == null) ? fm.length(eofblk.fileName()) : v.size;
+   }
+
+   /**
+    * Give the versions of the transaction the next commit time.
+    * @param txnum the id of the committing transaction
+    */
+   synchronized void commit(int txnum) {
+      ended(txnum);
+      List<Version> versions = uncommitted.remove(txnum);
+      if (versions == null)
+         return;
+      lastCommit++;
+      for (Version v : versions) {
+         v.commitTime = lastCommit;
+         committed.add(v);
+      }
+      collect();
+   }
+
+   /**
+    * Discard the versions of a transaction that did not commit,
+    * once it has restored the blocks that it modified.
+    * @param txnum the id of the transaction
+    */
+   synchronized void discard(int txnum) {
+      ended(txnum);
+      List<Version> versions = uncommitted.remove(txnum);
+      if (versions != null)
+         for (Version v : versions)
+            remove(v);
+   }
+
+   private void ended(int txnum) {
+      if (unversioned.remove(txnum))
+         notifyAll();
+   }
+
+   private void save(int txnum, Version v) {
+      List<Version> chain = new ArrayList<>(chains.getOrDefault(v.blk, List.of()));
+      chain.add(v);
+      chains.put(v.blk, chain);
+      uncommitted.computeIfAbsent(txnum, k -> new ArrayList<>()).add(v);
+   }
+
+   private Version visible(List<Version> chain, int snapshot) {
+      if (chain != null)
+         for (Version v : chain)
+            if (v.commitTime > snapshot)
+               return v;
+      return null;
+   }
+
+   private void collect() {
+      int oldest = snapshots.isEmpty() ? lastCommit : snapshots.firstKey();
+      while (!committed.isEmpty() && committed.peek().commitTime <= oldest)
+         remove(committed.poll());
+   }
+
+   private void remove(Version v) {
+      List<Version> chain = new ArrayList<>(chains.get(v.blk));
+      chain.remove(v);
+      if (chain.isEmpty())
+         chains.remove(v.blk);
+      else
+         chains.put(v.blk, chain);
+   }
+}
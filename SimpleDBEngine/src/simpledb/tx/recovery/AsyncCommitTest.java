@@ -0,0 +1,71 @@
+package simpledb.tx.recovery;
+
+import java.io.File;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+import simpledb.buffer.BufferMgr;
+import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.LockMgr;
+
+/**
+ * Checks that the log keeps the records of a transaction that
+ * committed asynchronously until its commit record is on disk.
+ * The log has segments of one block and slow writes, so that the
+ * log writer truncates the log while the commit record of the
+ * first transaction is still in memory; commits do not force
+ * the buffers, so that the commit does not wait for the log.
+ */
+public class AsyncCommitTest {
+   public static void main(String[] args) throws Exception {
+      SimpleDB.FORCE_AT_COMMIT = false;
+      File dir = new File("asynccommittest");
+      if (dir.exists())
+         for (File f : dir.listFiles())
+            f.delete();
+      FileMgr fm = new FileMgr(dir, 400) {
+         public void write(BlockId blk, Page p) {
+            if (blk.fileName().startsWith("asynclog."))
+               pause(200);
+            super.write(blk, p);
+         }
+      };
+      LogMgr lm = new LogMgr(fm, "asynclog", 8, 1);
+      lm.setLazyFlushDelay(10000);
+      BufferMgr bm = new BufferMgr(fm, lm, 8);
+      TxTable txtbl = new TxTable();
+      LockMgr lockmgr = new LockMgr();
+      BlockId blk0 = new BlockId("testfile", 0);
+      BlockId blk1 = new BlockId("testfile", 1);
+
+      Transaction tx1 = new Transaction(fm, lm, bm, txtbl, lockmgr);
+      tx1.setAsyncCommit(true);
+      tx1.pin(blk0);
+      for (int pos=0; pos<400; pos+=Integer.BYTES)
+         tx1.setInt(blk0, pos, pos, true);
+
+      // the log writer is still writing the records of tx1
+      // when it commits
+      Transaction tx2 = new Transaction(fm, lm, bm, txtbl, lockmgr);
+      tx2.pin(blk1);
+      for (int pos=0; pos<400; pos+=Integer.BYTES)
+         tx2.setInt(blk1, pos, pos, true);
+      tx1.commit();
+      pause(3000);
+      System.out.println("start of tx1 kept while its commit is lazy: "
+            + fm.files("asynclog.").contains("asynclog.0"));
+
+      lm.flush(lm.latestLSN());
+      pause(500);
+      System.out.println("start of tx1 kept after its commit is saved: "
+            + fm.files("asynclog.").contains("asynclog.0"));
+      tx2.rollback();
+   }
+
+   private static void pause(long millis) {
+      try {
+         Thread.sleep(millis);
+      }
+      catch (InterruptedException e) {}
+   }
+}
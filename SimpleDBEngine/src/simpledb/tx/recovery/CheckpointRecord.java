@@ -1,6 +1,6 @@
 package simpledb.tx.recovery;
 
-import simpledb.file.Page;
+import simpledb.file.BlockId;
 import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
@@ -24,12 +24,29 @@ public class CheckpointRecord implements LogRecord {
       return -1; // dummy value
    }
 
+   public int prevLSN() {
+      return 0;
+   }
+
+   /**
+    * Returns null, because the record modifies no block.
+    */
+   public BlockId block() {
+      return null;
+   }
+
    /**
     * Does nothing, because a checkpoint record
     * contains no undo information.
     */
    public void undo(Transaction tx) {}
 
+   /**
+    * Does nothing, because a checkpoint record
+    * contains no redo information.
+    */
+   public void redo(Transaction tx) {}
+
    public String toString() {
       return "<CHECKPOINT>";
    }
@@ -41,9 +58,7 @@ public class CheckpointRecord implements LogRecord {
     * @return the LSN of the last log value
     */
    public static int writeToLog(LogMgr lm) {
-      byte[] rec = new byte[Integer.BYTES];
-      Page p = new Page(rec);
-      p.setInt(0, CHECKPOINT);
+      byte[] rec = new RecordOutput().writeInt(CHECKPOINT).toByteArray();
       return lm.append(rec);
    }
 }
@@ -0,0 +1,131 @@
+package simpledb.tx.recovery;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.FileMgr;
+import simpledb.log.LogMgr;
+import simpledb.buffer.BufferMgr;
+
+/**
+ * Writes a nonquiescent checkpoint in the background
+ * at a fixed interval, so that recovery after a crash only
+ * has to read the log back to a recent checkpoint.
+ * A round is skipped if nothing was logged since the last checkpoint.
+ * A checkpoint that fails is retried in the next round;
+ * the checkpointer counts the failures and keeps the first one.
+ * <p>
+ * If SimpleDB.FORCE_AT_COMMIT is not set, committed modifications
+ * may only be in the buffer pool, and recovery may have to redo them.
+ * The checkpointer then holds the log from the redo point
+ * of its last checkpoint, or from its creation until the first one.
+ */
+public class Checkpointer implements Runnable {
+   private FileMgr fm;
+   private LogMgr lm;
+   private BufferMgr bm;
+   private TxTable txtbl;
+   private long interval;
+   private volatile long checkpoints;
+   private volatile long failures;
+   private volatile RuntimeException firstFailure;
+   private volatile int lastLSN = 0;
+   private int redoHold = -1;
+
+   /**
+    * Creates a checkpointer for the specified database.
+    * Its background thread is started by {@link #start(long)}.
+    * @param fm the file manager
+    * @param lm the log manager
+    * @param bm the buffer manager
+    * @param txtbl the table of the active transactions
+    */
+   public Checkpointer(FileMgr fm, LogMgr lm, BufferMgr bm, TxTable txtbl) {
+      this.fm = fm;
+      this.lm = lm;
+      this.bm = bm;
+      this.txtbl = txtbl;
+      if (!SimpleDB.FORCE_AT_COMMIT)
+         redoHold = lm.hold();
+   }
+
+   /**
+    * Starts the background thread, which should only happen
+    * once the database has been recovered.
+    * @param interval the number of milliseconds between checkpoints
+    */
+   public void start(long interval) {
+      this.interval = interval;
+      Thread t = new Thread(this, "simpledb-checkpointer");
+      t.setDaemon(true);
+      t.start();
+   }
+
+   /**
+    * Returns the number of checkpoints written.
+    * @return the number of checkpoints
+    */
+   public long checkpoints() {
+      return checkpoints;
+   }
+
+   /**
+    * Returns the number of background checkpoints that failed.
+    * @return the number of failures
+    */
+   public long failures() {
+      return failures;
+   }
+
+   /**
+    * Returns the first failure of a background checkpoint.
+    * @return the exception, or null if no checkpoint failed
+    */
+   public RuntimeException firstFailure() {
+      return firstFailure;
+   }
+
+   /**
+    * Returns the LSN of the last checkpoint record, or 0 if there is none.
+    * @return the LSN of the last checkpoint
+    */
+   public int lastCheckpoint() {
+      return lastLSN;
+   }
+
+   /**
+    * Writes a checkpoint.
+    * The files written since the last checkpoint are forced first,
+    * if the buffers that were written are not forced at commit.
+    * @return the LSN of the checkpoint record
+    */
+   public synchronized int checkpoint() {
+      int redoLSN = txtbl.redoPoint(lm, bm);
+      if (redoHold >= 0)
+         fm.forceAll();
+      lastLSN = txtbl.checkpoint(lm, redoLSN);
+      checkpoints++;
+      if (redoHold >= 0) {
+         lm.hold(redoLSN);
+         lm.release(redoHold);
+         redoHold = redoLSN;
+      }
+      return lastLSN;
+   }
+
+   public void run() {
+      while (true) {
+         try {
+            Thread.sleep(interval);
+            if (lm.latestLSN() != lastLSN)
+               checkpoint();
+         }
+         catch (InterruptedException e) {
+            return;
+         }
+         catch (RuntimeException e) {
+            if (firstFailure == null)
+               firstFailure = e;
+            failures++;
+         }
+      }
+   }
+}
@@ -1,6 +1,6 @@
 package simpledb.tx.recovery;
 
-import simpledb.file.Page;
+import simpledb.file.BlockId;
 import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
@@ -11,9 +11,8 @@ import simpledb.tx.Transaction;
 public class CommitRecord implements LogRecord {
    private int txnum;
 
-   public CommitRecord(Page p) {
-      int tpos = Integer.BYTES;
-      txnum = p.getInt(tpos);
+   public CommitRecord(RecordInput in) {
+      txnum = in.readInt();
    }
 
    public int op() {
@@ -24,12 +23,29 @@ public class CommitRecord implements LogRecord {
       return txnum;
    }
 
+   public int prevLSN() {
+      return 0;
+   }
+
+   /**
+    * Returns null, because the record modifies no block.
+    */
+   public BlockId block() {
+      return null;
+   }
+
    /**
     * Does nothing, because a commit record
     * contains no undo information.
     */
    public void undo(Transaction tx) {}
 
+   /**
+    * Does nothing, because a commit record
+    * contains no redo information.
+    */
+   public void redo(Transaction tx) {}
+
    public String toString() {
       return "<COMMIT " + txnum + ">";
    }
@@ -41,10 +57,7 @@ public class CommitRecord implements LogRecord {
     * @return the LSN of the last log value
     */
    public static int writeToLog(LogMgr lm, int txnum) {
-      byte[] rec = new byte[2*Integer.BYTES];
-      Page p = new Page(rec);
-      p.setInt(0, COMMIT);
-      p.setInt(Integer.BYTES, txnum);
+      byte[] rec = new RecordOutput().writeInt(COMMIT).writeInt(txnum).toByteArray();
       return lm.append(rec);
    }
 }
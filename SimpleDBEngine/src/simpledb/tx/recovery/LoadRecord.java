@@ -0,0 +1,105 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The LOAD log record, written when a transaction starts to
+ * load pages at the end of a file.
+ * The loaded pages are not logged: they are written directly
+ * to disk and forced when the transaction commits,
+ * so the record only needs to say where the load began.
+ */
+public class LoadRecord implements LogRecord {
+   private int txnum, prevLSN, blknum;
+   private String filename;
+
+   /**
+    * Create a new load log record.
+    * @param in the log values, positioned after the operator
+    * @param lm the log manager, whose dictionary names the file
+    */
+   public LoadRecord(RecordInput in, LogMgr lm) {
+      txnum = in.readInt();
+      prevLSN = in.readInt();
+      filename = lm.fileName(in.readInt());
+      blknum = in.readInt();
+   }
+
+   /**
+    * Create a load log record from its values,
+    * as kept in the undo list of a transaction.
+    */
+   public LoadRecord(int txnum, int prevLSN, String filename, int blknum) {
+      this.txnum = txnum;
+      this.prevLSN = prevLSN;
+      this.filename = filename;
+      this.blknum = blknum;
+   }
+
+   public int op() {
+      return LOAD;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public int prevLSN() {
+      return prevLSN;
+   }
+
+   /**
+    * Returns null, because the record applies to
+    * every block from the first loaded one to the end of the file.
+    */
+   public BlockId block() {
+      return null;
+   }
+
+   public String toString() {
+      return "<LOAD " + txnum + " " + filename + " " + blknum + ">";
+   }
+
+   /**
+    * Empty the loaded blocks, which are all the blocks
+    * from the first loaded one to the end of the file,
+    * since the transaction held the end of the file.
+    * A zeroed block is a formatted block whose slots are empty.
+    * The blocks stay in the file, to be reused by later inserts.
+    */
+   public void undo(Transaction tx) {
+      int size = tx.size(filename);
+      for (int b=blknum; b<size; b++) {
+         BlockId blk = new BlockId(filename, b);
+         tx.pin(blk);
+         for (int offset=0; offset+Integer.BYTES<=tx.blockSize(); offset+=Integer.BYTES)
+            tx.setInt(blk, offset, 0, false); // don't log the undo!
+         tx.unpin(blk);
+      }
+   }
+
+   /**
+    * Does nothing, because the loaded pages
+    * were forced before the transaction committed.
+    */
+   public void redo(Transaction tx) {}
+
+   /**
+    * A static method to write a load record to the log.
+    * This log record contains the LOAD operator,
+    * followed by the transaction id, the LSN of its previous
+    * record, the file id, and the number of the first loaded block.
+    * @return the LSN of the last log value
+    */
+   public static int writeToLog(LogMgr lm, int txnum, int prevLSN, String filename, int blknum) {
+      byte[] rec = new RecordOutput().writeInt(LOAD)
+                                     .writeInt(txnum)
+                                     .writeInt(prevLSN)
+                                     .writeInt(lm.fileId(filename))
+                                     .writeInt(blknum)
+                                     .toByteArray();
+      return lm.append(rec);
+   }
+}
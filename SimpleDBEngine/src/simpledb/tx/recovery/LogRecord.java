@@ -1,16 +1,25 @@
 package simpledb.tx.recovery;
 
-import simpledb.file.Page;
+import simpledb.file.BlockId;
+import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
 /**
  * The interface implemented by each type of log record.
+ * A record begins with its operator, followed by the transaction id
+ * and the values of its type, all encoded as varints
+ * by a {@link RecordOutput}.
+ * Records refer to files by their id in the dictionary of the log.
+ * Update records hold both the old and the new value,
+ * so that recovery can undo and redo them.
+ * The update records of a transaction are chained together,
+ * each holding the LSN of the transaction's previous record.
  * @author Edward Sciore
  */
 public interface LogRecord {
    static final int CHECKPOINT = 0, START = 1,
          COMMIT = 2, ROLLBACK  = 3,
-         SETINT = 4, SETSTRING = 5;
+         SETINT = 4, SETSTRING = 5, NQCKPT = 6, LOAD = 7;
 
    /**
     * Returns the log record's type. 
@@ -25,6 +34,20 @@ public interface LogRecord {
     */
    int txNumber();
 
+   /**
+    * Returns the LSN of the previous record of the
+    * same transaction, if the record is in its undo chain.
+    * @return the LSN of the previous record, or 0 if there is none
+    */
+   int prevLSN();
+
+   /**
+    * Returns the block modified by the operation
+    * encoded by this log record.
+    * @return the modified block, or null if there is none
+    */
+   BlockId block();
+
    /**
     * Undoes the operation encoded by this log record.
     * The only log record types for which this method
@@ -33,26 +56,39 @@ public interface LogRecord {
     */
    void undo(Transaction tx);
 
+   /**
+    * Redoes the operation encoded by this log record.
+    * As with undo, only the SETINT and SETSTRING
+    * records do anything.
+    * @param tx the transaction that is performing the redo.
+    */
+   void redo(Transaction tx);
+
    /**
     * Interpret the bytes returned by the log iterator.
+    * @param lm the log manager, whose dictionary names the files
     * @param bytes
     * @return
     */
-   static LogRecord createLogRecord(byte[] bytes) {
-      Page p = new Page(bytes);
-      switch (p.getInt(0)) {
+   static LogRecord createLogRecord(LogMgr lm, byte[] bytes) {
+      RecordInput in = new RecordInput(bytes);
+      switch (in.readInt()) {
       case CHECKPOINT: 
          return new CheckpointRecord();
       case START: 
-         return new StartRecord(p);
+         return new StartRecord(in);
       case COMMIT: 
-         return new CommitRecord(p);
+         return new CommitRecord(in);
       case ROLLBACK: 
-         return new RollbackRecord(p);
+         return new RollbackRecord(in);
       case SETINT: 
-         return new SetIntRecord(p);
+         return new SetIntRecord(in, lm);
       case SETSTRING: 
-         return new SetStringRecord(p);
+         return new SetStringRecord(in, lm);
+      case NQCKPT:
+         return new NQCheckpointRecord(in);
+      case LOAD:
+         return new LoadRecord(in, lm);
       default:
          return null;
       }
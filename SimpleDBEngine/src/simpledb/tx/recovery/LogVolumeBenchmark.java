@@ -0,0 +1,50 @@
+package simpledb.tx.recovery;
+
+import java.io.*;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.tx.Transaction;
+
+/**
+ * Measures the number of log bytes written per update,
+ * and the commit throughput, of transactions that
+ * modify integers and strings in a few table files.
+ * The log bytes include the unused space at the end of each log block.
+ */
+public class LogVolumeBenchmark {
+   private static final int TXS = 500, UPDATES = 10;
+   private static final String[] FILES = {"student.tbl", "enroll.tbl", "section.tbl"};
+
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("logvolumebenchmark", 400, 16);
+      FileMgr fm = db.fileMgr();
+      long before = logBytes(fm);
+      PrintStream out = System.out;
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+      long start = System.nanoTime();
+      for (int i=0; i<TXS; i++) {
+         Transaction tx = db.newTx();
+         BlockId blk = new BlockId(FILES[i % FILES.length], i % 8);
+         tx.pin(blk);
+         for (int j=0; j<UPDATES; j++) {
+            if (j % 2 == 0)
+               tx.setInt(blk, 8*j, i*j, true);
+            else
+               tx.setString(blk, 8*j + 100, "val" + j, true);
+         }
+         tx.commit();
+      }
+      double secs = (System.nanoTime() - start) / 1e9;
+      System.setOut(out);
+      long bytes = logBytes(fm) - before;
+      System.out.format("log bytes per update: %.1f%n", (double) bytes / (TXS * UPDATES));
+      System.out.format("commits/s: %.0f%n", TXS / secs);
+   }
+
+   private static long logBytes(FileMgr fm) {
+      long bytes = 0;
+      for (String filename : fm.files(SimpleDB.LOG_FILE + "."))
+         bytes += (long) fm.length(filename) * fm.blockSize();
+      return bytes;
+   }
+}
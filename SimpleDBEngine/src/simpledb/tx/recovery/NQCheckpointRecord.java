@@ -0,0 +1,105 @@
+package simpledb.tx.recovery;
+
+import java.util.*;
+import simpledb.file.BlockId;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The NQCKPT log record of a nonquiescent checkpoint,
+ * which lists the transactions that were active when it was written.
+ * It also says how many of the records before it
+ * recovery must redo, because their modifications
+ * may not have been written to disk.
+ * The number is a difference of LSNs, since LSNs
+ * are not kept from one session to the next.
+ */
+public class NQCheckpointRecord implements LogRecord {
+   private List<Integer> txs = new ArrayList<>();
+   private int redoDistance;
+
+   /**
+    * Create a log record by reading the list of transactions from the log.
+    * @param in the log values, positioned after the operator
+    */
+   public NQCheckpointRecord(RecordInput in) {
+      int n = in.readInt();
+      for (int i=0; i<n; i++)
+         txs.add(in.readInt());
+      redoDistance = in.readInt();
+   }
+
+   public int op() {
+      return NQCKPT;
+   }
+
+   /**
+    * Checkpoint records have no associated transaction,
+    * and so the method returns a "dummy", negative txid.
+    */
+   public int txNumber() {
+      return -1; // dummy value
+   }
+
+   public int prevLSN() {
+      return 0;
+   }
+
+   /**
+    * Returns null, because the record modifies no block.
+    */
+   public BlockId block() {
+      return null;
+   }
+
+   /**
+    * Returns the transactions that were active
+    * when the checkpoint was written.
+    * @return the ids of those transactions
+    */
+   public List<Integer> activeTxs() {
+      return txs;
+   }
+
+   /**
+    * Returns the number of records before this one
+    * that recovery must redo.
+    * @return the number of records to redo
+    */
+   public int redoDistance() {
+      return redoDistance;
+   }
+
+   /**
+    * Does nothing, because a checkpoint record
+    * contains no undo information.
+    */
+   public void undo(Transaction tx) {}
+
+   /**
+    * Does nothing, because a checkpoint record
+    * contains no redo information.
+    */
+   public void redo(Transaction tx) {}
+
+   public String toString() {
+      return "<NQCKPT " + txs + " " + redoDistance + ">";
+   }
+
+   /** 
+    * A static method to write a nonquiescent checkpoint record to the log.
+    * This log record contains the NQCKPT operator,
+    * followed by the number of active transactions, their ids,
+    * and the distance of the record from the first record to redo.
+    * @param redoLSN the LSN of the first record to redo
+    * @return the LSN of the last log value
+    */
+   public static int writeToLog(LogMgr lm, Collection<Integer> txs, int redoLSN) {
+      return lm.append(lsn -> {
+         RecordOutput out = new RecordOutput().writeInt(NQCKPT).writeInt(txs.size());
+         for (int txnum : txs)
+            out.writeInt(txnum);
+         return out.writeInt(lsn - redoLSN).toByteArray();
+      });
+   }
+}
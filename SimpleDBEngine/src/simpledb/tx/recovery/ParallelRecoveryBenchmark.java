@@ -0,0 +1,102 @@
+package simpledb.tx.recovery;
+
+import java.io.*;
+import java.util.Random;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * Measures the time that recovery takes to apply a large log,
+ * as the number of recovery threads grows.
+ * For each number of threads, a child process appends a synthetic log
+ * to a database of its own: transactions that update random blocks
+ * of a few files, one in twenty of which does not finish.
+ * The benchmark then opens the database and times its recovery.
+ * A first round warms up the JVM and is not reported.
+ * Usage: ParallelRecoveryBenchmark [transactions]
+ */
+public class ParallelRecoveryBenchmark {
+   private static final String[] FILES = {"student.tbl", "enroll.tbl", "section.tbl", "course.tbl"};
+   private static final int BLOCKS = 500, UPDATES = 10;
+
+   public static void main(String[] args) throws Exception {
+      if (args.length > 0 && args[0].equals("generate")) {
+         generate(args[1], Integer.parseInt(args[2]));
+         return;
+      }
+      int txs = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+      PrintStream out = System.out;
+      out.println("log records: " + txs * (UPDATES + 2));
+      out.println("   threads   recovery (ms)");
+      run("parallelrecoverybenchmark0", 1, txs); // warms up the JVM
+      for (int threads=1; threads<=8; threads*=2) {
+         double millis = run("parallelrecoverybenchmark" + threads, threads, txs);
+         out.format("%10d %15.1f%n", threads, millis);
+      }
+   }
+
+   /**
+    * Generates a log in a child process, and returns the
+    * number of milliseconds taken to recover from it.
+    */
+   private static double run(String dirname, int threads, int txs) throws Exception {
+      String java = ProcessHandle.current().info().command().orElse("java");
+      String classpath = System.getProperty("java.class.path");
+      new ProcessBuilder(java, "-cp", classpath,
+                         ParallelRecoveryBenchmark.class.getName(), "generate",
+                         dirname, "" + txs)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start().waitFor();
+      PrintStream out = System.out;
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+      SimpleDB.RECOVERY_THREADS = threads;
+      SimpleDB db = new SimpleDB(dirname, 400, 64);
+      Transaction tx = db.newTx();
+      long start = System.nanoTime();
+      tx.recover();
+      double millis = (System.nanoTime() - start) / 1e6;
+      tx.commit();
+      System.setOut(out);
+      return millis;
+   }
+
+   /**
+    * Runs in the child process, which appends the synthetic log
+    * to the database, after recovering it from the previous run.
+    */
+   private static void generate(String dirname, int txs) {
+      SimpleDB db = new SimpleDB(dirname, 400, 64);
+      Transaction tx = db.newTx();
+      tx.recover();
+      tx.commit();
+      FileMgr fm = db.fileMgr();
+      LogMgr lm = db.logMgr();
+      for (String filename : FILES)
+         while (fm.length(filename) < BLOCKS)
+            fm.append(filename);
+      lm.hold(); // as the transactions of the log would, so that it is kept
+      Random rand = new Random(0);
+      int lsn = 0;
+      for (int txnum=1; txnum<=txs; txnum++) {
+         int prevLSN = StartRecord.writeToLog(lm, txnum);
+         for (int i=0; i<UPDATES; i++) {
+            BlockId blk = new BlockId(FILES[rand.nextInt(FILES.length)], rand.nextInt(BLOCKS));
+            int offset = 8 * rand.nextInt(40);
+            if (i % 2 == 0)
+               prevLSN = SetIntRecord.writeToLog(lm, txnum, prevLSN, blk, offset,
+                                                 rand.nextInt(), rand.nextInt());
+            else
+               prevLSN = SetStringRecord.writeToLog(lm, txnum, prevLSN, blk, offset % 300,
+                                                    "old" + txnum, "new" + txnum);
+         }
+         if (txnum % 20 != 0)
+            lsn = CommitRecord.writeToLog(lm, txnum);
+         else
+            lsn = prevLSN;
+      }
+      lm.flush(lsn);
+   }
+}
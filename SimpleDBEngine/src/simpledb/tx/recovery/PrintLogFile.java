@@ -19,7 +19,7 @@ public class PrintLogFile {
       Iterator<byte[]> iter = lm.iterator();
       while (iter.hasNext()) {
          byte[] bytes = iter.next();
-         LogRecord rec = LogRecord.createLogRecord(bytes);
+         LogRecord rec = LogRecord.createLogRecord(lm, bytes);
          System.out.println(rec);
       }
    }
@@ -0,0 +1,40 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.Page;
+
+/**
+ * Reads the values of a log record in the order
+ * in which a {@link RecordOutput} wrote them.
+ */
+class RecordInput {
+   private byte[] buf;
+   private int pos = 0;
+
+   RecordInput(byte[] buf) {
+      this.buf = buf;
+   }
+
+   int readInt() {
+      int n = 0;
+      int shift = 0;
+      int b;
+      do {
+         b = buf[pos++];
+         n |= (b & 0x7f) << shift;
+         shift += 7;
+      } while ((b & 0x80) != 0);
+      return n;
+   }
+
+   int readSignedInt() {
+      int n = readInt();
+      return (n >>> 1) ^ -(n & 1);
+   }
+
+   String readString() {
+      int length = readInt();
+      String s = new String(buf, pos, length, Page.CHARSET);
+      pos += length;
+      return s;
+   }
+}
@@ -0,0 +1,61 @@
+package simpledb.tx.recovery;
+
+import java.util.Arrays;
+import simpledb.file.Page;
+
+/**
+ * Builds the bytes of a log record.
+ * Integers are written as varints, seven bits per byte with
+ * the high bit set on every byte but the last, so that the
+ * small numbers found in most records take one or two bytes.
+ * Values that can be negative are zigzag-encoded first.
+ */
+class RecordOutput {
+   private byte[] buf = new byte[16];
+   private int pos = 0;
+
+   /**
+    * Writes a non-negative integer.
+    */
+   RecordOutput writeInt(int n) {
+      while ((n & ~0x7f) != 0) {
+         writeByte((n & 0x7f) | 0x80);
+         n >>>= 7;
+      }
+      writeByte(n);
+      return this;
+   }
+
+   /**
+    * Writes an integer that may be negative.
+    */
+   RecordOutput writeSignedInt(int n) {
+      return writeInt((n << 1) ^ (n >> 31));
+   }
+
+   /**
+    * Writes a string, preceded by its length in bytes.
+    */
+   RecordOutput writeString(String s) {
+      byte[] b = s.getBytes(Page.CHARSET);
+      writeInt(b.length);
+      ensureCapacity(b.length);
+      System.arraycopy(b, 0, buf, pos, b.length);
+      pos += b.length;
+      return this;
+   }
+
+   byte[] toByteArray() {
+      return Arrays.copyOf(buf, pos);
+   }
+
+   private void writeByte(int b) {
+      ensureCapacity(1);
+      buf[pos++] = (byte) b;
+   }
+
+   private void ensureCapacity(int n) {
+      if (pos + n > buf.length)
+         buf = Arrays.copyOf(buf, Math.max(2 * buf.length, pos + n));
+   }
+}
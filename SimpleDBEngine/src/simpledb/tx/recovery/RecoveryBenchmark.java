@@ -0,0 +1,97 @@
+package simpledb.tx.recovery;
+
+import java.io.*;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.tx.Transaction;
+
+/**
+ * Measures the time that recovery takes after a crash,
+ * for several checkpoint intervals, with and without
+ * forcing the modified buffers at commit.
+ * For each setting, a child process commits transactions
+ * for a few seconds, starts one more transaction,
+ * and then exits without committing it.
+ * The benchmark then recovers the database and reports the
+ * commit throughput of the child, the size of the log,
+ * and the time taken by recovery.
+ * Usage: RecoveryBenchmark [seconds]
+ */
+public class RecoveryBenchmark {
+   private static final int[] INTERVALS = {0, 1000, 100};
+
+   public static void main(String[] args) throws Exception {
+      if (args.length > 0 && args[0].equals("load")) {
+         load(args[1], Boolean.parseBoolean(args[2]), Integer.parseInt(args[3]),
+              Integer.parseInt(args[4]));
+         return;
+      }
+      int seconds = (args.length > 0) ? Integer.parseInt(args[0]) : 3;
+      String java = ProcessHandle.current().info().command().orElse("java");
+      String classpath = System.getProperty("java.class.path");
+      System.out.println("force at commit   checkpoint interval (ms)   commits/s"
+                         + "   log (KB)   recovery (ms)");
+      for (boolean force : new boolean[] {true, false}) {
+         for (int interval : INTERVALS) {
+            String dirname = "recoverybenchmark" + (force ? "force" : "noforce") + interval;
+            Process p = new ProcessBuilder(java, "-cp", classpath,
+                                           RecoveryBenchmark.class.getName(), "load", dirname,
+                                           "" + force, "" + interval, "" + seconds)
+                              .redirectError(ProcessBuilder.Redirect.INHERIT)
+                              .start();
+            String commits = "";
+            BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+               commits = line;
+            p.waitFor();
+
+            PrintStream out = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            SimpleDB.FORCE_AT_COMMIT = force;
+            SimpleDB db = new SimpleDB(dirname, 400, 8);
+            long logsize = 0;
+            for (String filename : db.fileMgr().files(SimpleDB.LOG_FILE + "."))
+               logsize += (long) db.fileMgr().length(filename) * db.fileMgr().blockSize();
+            Transaction tx = db.newTx();
+            long start = System.nanoTime();
+            tx.recover();
+            double millis = (System.nanoTime() - start) / 1e6;
+            tx.commit();
+            System.setOut(out);
+            System.out.format("%15s %26s %11.0f %10d %15.1f%n", force,
+                              (interval == 0) ? "none" : "" + interval,
+                              Double.parseDouble(commits) / seconds, logsize / 1024, millis);
+         }
+      }
+   }
+
+   /**
+    * Runs in the child process, which exits
+    * with an active transaction, as if it had crashed.
+    * Its last line of output is the number of commits.
+    */
+   private static void load(String dirname, boolean force, int interval, int seconds) {
+      SimpleDB.FORCE_AT_COMMIT = force;
+      SimpleDB.CHECKPOINT_INTERVAL = interval;
+      SimpleDB db = new SimpleDB(dirname);
+      PrintStream out = System.out;
+      System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+      long end = System.currentTimeMillis() + seconds * 1000L;
+      int i = 0;
+      while (System.currentTimeMillis() < end) {
+         Transaction tx = db.newTx();
+         BlockId blk = new BlockId("benchfile", i % 16);
+         tx.pin(blk);
+         tx.setInt(blk, 0, i, true);
+         tx.setString(blk, 20, "value" + i, true);
+         tx.commit();
+         i++;
+      }
+      Transaction tx = db.newTx();
+      BlockId blk = new BlockId("benchfile", 0);
+      tx.pin(blk);
+      tx.setInt(blk, 0, -1, true);
+      out.println(i);
+      System.exit(0);
+   }
+}
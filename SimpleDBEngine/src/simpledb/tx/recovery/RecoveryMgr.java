@@ -5,6 +5,8 @@ import simpledb.file.*;
 import simpledb.log.*;
 import simpledb.buffer.*;
 import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.LockMgr;
+import simpledb.server.SimpleDB;
 import static simpledb.tx.recovery.LogRecord.*;
 
 /**
@@ -12,30 +14,85 @@ import static simpledb.tx.recovery.LogRecord.*;
  * @author Edward Sciore
  */
 public class RecoveryMgr {
+   private static final int MAX_UNDO_RECORDS = 32;
+   private static final int MIN_PARALLEL_RECORDS = 1000;
+
+   private FileMgr fm;
    private LogMgr lm;
    private BufferMgr bm;
+   private TxTable txtbl;
+   private LockMgr lockmgr;
    private Transaction tx;
    private int txnum;
+   private int startLSN;
+   private int lastLSN;
+   private List<LogRecord> undoList = new ArrayList<>();
+   private Set<String> loadedFiles = new HashSet<>();
 
    /**
-    * Create a recovery manager for the specified transaction.
+    * Create a recovery manager for the specified transaction,
+    * and register the transaction in the table of active transactions.
+    * The lock manager is used by the transactions
+    * that recovery starts to apply the log in parallel.
     * @param txnum the ID of the specified transaction
     */
-   public RecoveryMgr(Transaction tx, int txnum, LogMgr lm, BufferMgr bm) {
+   public RecoveryMgr(Transaction tx, int txnum, FileMgr fm, LogMgr lm, BufferMgr bm,
+                      TxTable txtbl, LockMgr lockmgr) {
       this.tx = tx;
       this.txnum = txnum;
+      this.fm = fm;
       this.lm = lm;
       this.bm = bm;
-      StartRecord.writeToLog(lm, txnum);
+      this.txtbl = txtbl;
+      this.lockmgr = lockmgr;
+      txtbl.startLock.readLock().lock();
+      try {
+         startLSN = lm.hold();
+         txtbl.activeTxs.put(txnum, startLSN);
+         lastLSN = StartRecord.writeToLog(lm, txnum);
+      }
+      finally {
+         txtbl.startLock.readLock().unlock();
+      }
    }
 
    /**
     * Write a commit record to the log, and flushes it to disk.
     */
    public void commit() {
-      bm.flushAll(txnum);
+      commit(false);
+   }
+
+   /**
+    * Write a commit record to the log.
+    * If SimpleDB.FORCE_AT_COMMIT is set, the modified buffers of
+    * the transaction are flushed first, as usual.
+    * Otherwise only the buffers it modified without logging are
+    * flushed, and the others are written later by the buffer manager;
+    * after a crash, recovery redoes the committed modifications
+    * that did not reach the disk.
+    * If the commit is asynchronous, the commit record is flushed
+    * lazily, and a crash before then undoes the transaction;
+    * the transaction therefore stays active, and keeps its hold
+    * on the log, until the record is on disk.
+    * @param async true if the method need not wait for the commit record
+    */
+   public void commit(boolean async) {
+      for (String filename : loadedFiles)
+         fm.force(filename);
+      if (SimpleDB.FORCE_AT_COMMIT)
+         bm.flushAll(txnum);
+      else
+         bm.flushUnlogged(txnum);
       int lsn = CommitRecord.writeToLog(lm, txnum);
-      lm.flush(lsn);
+      if (async)
+         lm.flushLazily(lsn);
+      else
+         lm.flush(lsn);
+      lm.whenSaved(lsn, () -> {
+         txtbl.activeTxs.remove(txnum);
+         lm.release(startLSN);
+      });
    }
 
    /**
@@ -46,17 +103,23 @@ public class RecoveryMgr {
       bm.flushAll(txnum);
       int lsn = RollbackRecord.writeToLog(lm, txnum);
       lm.flush(lsn);
+      txtbl.activeTxs.remove(txnum);
+      lm.release(startLSN);
    }
 
    /**
-    * Recover uncompleted transactions from the log
+    * Redo the committed transactions and recover uncompleted
+    * transactions from the log,
     * and then write a quiescent checkpoint record to the log and flush it.
+    * The log segments written before the checkpoint
+    * are then no longer needed.
     */
    public void recover() {
       doRecover();
       bm.flushAll(txnum);
       int lsn = CheckpointRecord.writeToLog(lm);
       lm.flush(lsn);
+      lm.release(0);
    }
 
    /**
@@ -68,7 +131,9 @@ public class RecoveryMgr {
    public int setInt(Buffer buff, int offset, int newval) {
       int oldval = buff.contents().getInt(offset);
       BlockId blk = buff.block();
-      return SetIntRecord.writeToLog(lm, txnum, blk, offset, oldval);
+      remember(new SetIntRecord(txnum, lastLSN, blk, offset, oldval, newval));
+      lastLSN = SetIntRecord.writeToLog(lm, txnum, lastLSN, blk, offset, oldval, newval);
+      return lastLSN;
    }
 
    /**
@@ -80,49 +145,209 @@ public class RecoveryMgr {
    public int setString(Buffer buff, int offset, String newval) {
       String oldval = buff.contents().getString(offset);
       BlockId blk = buff.block();
-      return SetStringRecord.writeToLog(lm, txnum, blk, offset, oldval);
+      remember(new SetStringRecord(txnum, lastLSN, blk, offset, oldval, newval));
+      lastLSN = SetStringRecord.writeToLog(lm, txnum, lastLSN, blk, offset, oldval, newval);
+      return lastLSN;
    }
 
    /**
-    * Rollback the transaction, by iterating
-    * through the log records until it finds 
-    * the transaction's START record,
-    * calling undo() for each of the transaction's
-    * log records.
+    * Write a load record to the log and flush it,
+    * before the transaction writes the loaded pages of the file.
+    * The file is forced when the transaction commits.
+    * @param filename the name of the file
+    * @param blknum the number of the first loaded block
+    */
+   public void load(String filename, int blknum) {
+      remember(new LoadRecord(txnum, lastLSN, filename, blknum));
+      lastLSN = LoadRecord.writeToLog(lm, txnum, lastLSN, filename, blknum);
+      lm.flush(lastLSN);
+      loadedFiles.add(filename);
+   }
+
+   /**
+    * Add a record to the undo list of the transaction,
+    * or drop the list once the transaction is too large for it.
+    */
+   private void remember(LogRecord rec) {
+      if (undoList == null)
+         return;
+      if (undoList.size() < MAX_UNDO_RECORDS)
+         undoList.add(rec);
+      else
+         undoList = null;
+   }
+
+   /**
+    * Rollback the transaction, by calling undo() for each
+    * of the transaction's update records, from the last to the first.
+    * A small transaction finds its records in its undo list.
+    * Otherwise, the method follows the chain of the transaction's
+    * records backwards from its last record
+    * until it reaches the transaction's START record,
+    * reading only the records of the transaction.
     */
    private void doRollback() {
-      Iterator<byte[]> iter = lm.iterator();
-      while (iter.hasNext()) {
-         byte[] bytes = iter.next();
-         LogRecord rec = LogRecord.createLogRecord(bytes); 
-         if (rec.txNumber() == txnum) {
-            if (rec.op() == START)
-               return;
-            rec.undo(tx);
-         }
+      if (undoList != null) {
+         for (int i=undoList.size()-1; i>=0; i--)
+            undoList.get(i).undo(tx);
+         return;
+      }
+      int lsn = lastLSN;
+      while (lsn != 0) {
+         LogRecord rec = LogRecord.createLogRecord(lm, lm.read(lsn));
+         if (rec.op() == START)
+            return;
+         rec.undo(tx);
+         lsn = rec.prevLSN();
       }
    }
 
    /**
     * Do a complete database recovery.
-    * The method iterates through the log records.
-    * Whenever it finds a log record for an unfinished
-    * transaction, it calls undo() on that record.
-    * The method stops when it encounters a CHECKPOINT record
-    * or the end of the log.
+    * The method iterates backwards through the log records.
+    * It collects the update records of committed transactions,
+    * and the update records of unfinished transactions,
+    * until it encounters a CHECKPOINT record or the end of the log.
+    * When it encounters an NQCKPT record, it only continues until
+    * it has found the START records of the unfinished transactions
+    * that the checkpoint lists, since every earlier transaction
+    * finished before the checkpoint, and until it has read the
+    * records that the checkpoint says must be redone.
+    * The method then redoes the collected records of committed
+    * transactions, from the first to the last,
+    * and undoes those of unfinished transactions,
+    * from the last to the first, as described in {@link #apply}.
+    * The modifications of rolled back transactions are neither
+    * redone nor undone, since their rollback flushed its buffers.
     */
    private void doRecover() {
-      Collection<Integer> finishedTxs = new ArrayList<>();
+      Collection<Integer> committedTxs = new HashSet<>();
+      Collection<Integer> finishedTxs = new HashSet<>();
+      Collection<Integer> startedTxs = new HashSet<>();
+      Collection<Integer> awaitedTxs = null;
+      int redoRemaining = 0;
+      List<LogRecord> redoRecs = new ArrayList<>();
+      List<LogRecord> undoRecs = new ArrayList<>();
       Iterator<byte[]> iter = lm.iterator();
       while (iter.hasNext()) {
          byte[] bytes = iter.next();
-         LogRecord rec = LogRecord.createLogRecord(bytes);
+         LogRecord rec = LogRecord.createLogRecord(lm, bytes);
          if (rec.op() == CHECKPOINT)
-            return;
-         if (rec.op() == COMMIT || rec.op() == ROLLBACK)
+            break;
+         boolean toRedo = (awaitedTxs == null) || redoRemaining-- > 0;
+         if (rec.op() == NQCKPT) {
+            if (awaitedTxs == null) {
+               NQCheckpointRecord ckpt = (NQCheckpointRecord) rec;
+               awaitedTxs = new HashSet<>(ckpt.activeTxs());
+               awaitedTxs.removeAll(finishedTxs);
+               awaitedTxs.removeAll(startedTxs);
+               redoRemaining = ckpt.redoDistance();
+            }
+         }
+         else if (rec.op() == COMMIT) {
+            committedTxs.add(rec.txNumber());
+            finishedTxs.add(rec.txNumber());
+         }
+         else if (rec.op() == ROLLBACK)
             finishedTxs.add(rec.txNumber());
+         else if (rec.op() == START)
+            startedTxs.add(rec.txNumber());
+         else if (committedTxs.contains(rec.txNumber())) {
+            if (toRedo)
+               redoRecs.add(rec);
+         }
          else if (!finishedTxs.contains(rec.txNumber()))
+            undoRecs.add(rec);
+         if (awaitedTxs != null) {
+            if (rec.op() == START)
+               awaitedTxs.remove(rec.txNumber());
+            if (awaitedTxs.isEmpty() && redoRemaining <= 0)
+               break;
+         }
+      }
+      Collections.reverse(redoRecs);
+      apply(redoRecs, undoRecs);
+   }
+
+   /**
+    * Redo and then undo the specified records, in their order.
+    * If there are many records, they are partitioned by block
+    * among SimpleDB.RECOVERY_THREADS worker threads
+    * (or one per processor, if it is 0), so that the records
+    * of each block are applied by a single worker, in the same order.
+    * Each worker applies its records within a transaction of its own,
+    * whose commit flushes the buffers it modified,
+    * since these modifications are not logged.
+    * The records that modify no single block, such as LOAD records,
+    * are then applied by the calling thread.
+    * Since a transaction loads only new blocks, which it holds
+    * until it finishes, these records can be applied last.
+    * @param redoRecs the records to redo, from the first to the last
+    * @param undoRecs the records to undo, from the last to the first
+    */
+   private void apply(List<LogRecord> redoRecs, List<LogRecord> undoRecs) {
+      int nthreads = (SimpleDB.RECOVERY_THREADS > 0) ? SimpleDB.RECOVERY_THREADS
+                     : Runtime.getRuntime().availableProcessors();
+      nthreads = Math.min(nthreads, bm.size() / 2);
+      if (nthreads <= 1 || redoRecs.size() + undoRecs.size() < MIN_PARALLEL_RECORDS) {
+         for (LogRecord rec : redoRecs)
+            rec.redo(tx);
+         for (LogRecord rec : undoRecs)
             rec.undo(tx);
+         return;
+      }
+      List<List<LogRecord>> redoParts = partition(redoRecs, nthreads);
+      List<List<LogRecord>> undoParts = partition(undoRecs, nthreads);
+      List<LogRecord> redoRest = redoParts.remove(nthreads);
+      List<LogRecord> undoRest = undoParts.remove(nthreads);
+      Thread[] workers = new Thread[nthreads];
+      List<RuntimeException> failures = Collections.synchronizedList(new ArrayList<>());
+      for (int i=0; i<nthreads; i++) {
+         List<LogRecord> redoPart = redoParts.get(i);
+         List<LogRecord> undoPart = undoParts.get(i);
+         workers[i] = new Thread(() -> {
+            try {
+               Transaction worker = new Transaction(fm, lm, bm, txtbl, lockmgr);
+               for (LogRecord rec : redoPart)
+                  rec.redo(worker);
+               for (LogRecord rec : undoPart)
+                  rec.undo(worker);
+               worker.commit();
+            }
+            catch (RuntimeException e) {
+               failures.add(e);
+            }
+         }, "simpledb-recovery-" + i);
+         workers[i].start();
+      }
+      for (Thread t : workers) {
+         try {
+            t.join();
+         }
+         catch (InterruptedException e) {
+            throw new RuntimeException(e);
+         }
+      }
+      if (!failures.isEmpty())
+         throw failures.get(0);
+      for (LogRecord rec : redoRest)
+         rec.redo(tx);
+      for (LogRecord rec : undoRest)
+         rec.undo(tx);
+   }
+
+   /**
+    * Split the records into n lists by the hash of their block,
+    * plus a last list of the records that have no block.
+    */
+   private static List<List<LogRecord>> partition(List<LogRecord> recs, int n) {
+      List<List<LogRecord>> parts = new ArrayList<>();
+      for (int i=0; i<=n; i++)
+         parts.add(new ArrayList<>());
+      for (LogRecord rec : recs) {
+         BlockId blk = rec.block();
+         parts.get((blk == null) ? n : Math.floorMod(blk.hashCode(), n)).add(rec);
       }
+      return parts;
    }
 }
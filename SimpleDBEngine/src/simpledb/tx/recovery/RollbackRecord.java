@@ -1,6 +1,6 @@
 package simpledb.tx.recovery;
 
-import simpledb.file.Page;
+import simpledb.file.BlockId;
 import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
@@ -15,9 +15,8 @@ public class RollbackRecord implements LogRecord {
     * Create a RollbackRecord object.
     * @param txnum the ID of the specified transaction
     */
-   public RollbackRecord(Page p) {
-      int tpos = Integer.BYTES;
-      txnum = p.getInt(tpos);
+   public RollbackRecord(RecordInput in) {
+      txnum = in.readInt();
    }
 
    public int op() {
@@ -28,12 +27,29 @@ public class RollbackRecord implements LogRecord {
       return txnum;
    }
 
+   public int prevLSN() {
+      return 0;
+   }
+
+   /**
+    * Returns null, because the record modifies no block.
+    */
+   public BlockId block() {
+      return null;
+   }
+
    /**
     * Does nothing, because a rollback record
     * contains no undo information.
     */
    public void undo(Transaction tx) {}
 
+   /**
+    * Does nothing, because a rollback record
+    * contains no redo information.
+    */
+   public void redo(Transaction tx) {}
+
    public String toString() {
       return "<ROLLBACK " + txnum + ">";
    }
@@ -45,10 +61,7 @@ public class RollbackRecord implements LogRecord {
     * @return the LSN of the last log value
     */
    public static int writeToLog(LogMgr lm, int txnum) {
-      byte[] rec = new byte[2*Integer.BYTES];
-      Page p = new Page(rec);
-      p.setInt(0, ROLLBACK);
-      p.setInt(Integer.BYTES, txnum);
+      byte[] rec = new RecordOutput().writeInt(ROLLBACK).writeInt(txnum).toByteArray();
       return lm.append(rec);
    }
 }
@@ -5,25 +5,37 @@ import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
 public class SetIntRecord implements LogRecord {
-   private int txnum, offset, val;
+   private int txnum, prevLSN, offset, oldval, newval;
    private BlockId blk;
 
    /**
     * Create a new setint log record.
-    * @param bb the bytebuffer containing the log values
+    * @param in the log values, positioned after the operator
+    * @param lm the log manager, whose dictionary names the file
     */
-   public SetIntRecord(Page p) {
-      int tpos = Integer.BYTES;
-      txnum = p.getInt(tpos);
-      int fpos = tpos + Integer.BYTES;
-      String filename = p.getString(fpos);
-      int bpos = fpos + Page.maxLength(filename.length());
-      int blknum = p.getInt(bpos);
+   public SetIntRecord(RecordInput in, LogMgr lm) {
+      txnum = in.readInt();
+      prevLSN = in.readInt();
+      String filename = lm.fileName(in.readInt());
+      int blknum = in.readInt();
       blk = new BlockId(filename, blknum);
-      int opos = bpos + Integer.BYTES;
-      offset = p.getInt(opos);
-      int vpos = opos + Integer.BYTES;      
-      val = p.getInt(vpos);
+      offset = in.readInt();
+      oldval = in.readSignedInt();
+      newval = in.readSignedInt();
+   }
+
+   /**
+    * Create a setint log record from its values,
+    * as kept in the undo list of a transaction.
+    */
+   public SetIntRecord(int txnum, int prevLSN, BlockId blk, int offset,
+                       int oldval, int newval) {
+      this.txnum = txnum;
+      this.prevLSN = prevLSN;
+      this.blk = blk;
+      this.offset = offset;
+      this.oldval = oldval;
+      this.newval = newval;
    }
 
    public int op() {
@@ -34,8 +46,16 @@ public class SetIntRecord implements LogRecord {
       return txnum;
    }
 
+   public int prevLSN() {
+      return prevLSN;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
    public String toString() {
-      return "<SETINT " + txnum + " " + blk + " " + offset + " " + val + ">";
+      return "<SETINT " + txnum + " " + blk + " " + offset + " " + oldval + " " + newval + ">";
    }
 
    /**
@@ -47,32 +67,45 @@ public class SetIntRecord implements LogRecord {
     */
    public void undo(Transaction tx) {
       tx.pin(blk);
-      tx.setInt(blk, offset, val, false); // don't log the undo!
+      tx.setInt(blk, offset, oldval, false); // don't log the undo!
+      tx.unpin(blk);
+   }
+
+   /**
+    * Replace the specified data value with the value
+    * written by the transaction, as saved in the log record.
+    * Temporary files are deleted at startup,
+    * so their modifications are not redone.
+    * @see simpledb.tx.recovery.LogRecord#redo(Transaction)
+    */
+   public void redo(Transaction tx) {
+      if (FileMgr.isTemp(blk.fileName()))
+         return;
+      tx.pin(blk);
+      tx.setInt(blk, offset, newval, false); // don't log the redo!
       tx.unpin(blk);
    }
 
    /**
     * A static method to write a setInt record to the log.
     * This log record contains the SETINT operator,
-    * followed by the transaction id, the filename, number,
+    * followed by the transaction id, the LSN of its previous
+    * record, the file id, number,
     * and offset of the modified block, and the previous
-    * integer value at that offset.
+    * and new integer values at that offset.
     * @return the LSN of the last log value
     */
-   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, int val) {
-      int tpos = Integer.BYTES;
-      int fpos = tpos + Integer.BYTES;
-      int bpos = fpos + Page.maxLength(blk.fileName().length());
-      int opos = bpos + Integer.BYTES;
-      int vpos = opos + Integer.BYTES;
-      byte[] rec = new byte[vpos + Integer.BYTES];
-      Page p = new Page(rec);
-      p.setInt(0, SETINT);
-      p.setInt(tpos, txnum);
-      p.setString(fpos, blk.fileName());
-      p.setInt(bpos, blk.number());
-      p.setInt(opos, offset);
-      p.setInt(vpos, val);
+   public static int writeToLog(LogMgr lm, int txnum, int prevLSN, BlockId blk, int offset,
+                                int oldval, int newval) {
+      byte[] rec = new RecordOutput().writeInt(SETINT)
+                                     .writeInt(txnum)
+                                     .writeInt(prevLSN)
+                                     .writeInt(lm.fileId(blk.fileName()))
+                                     .writeInt(blk.number())
+                                     .writeInt(offset)
+                                     .writeSignedInt(oldval)
+                                     .writeSignedInt(newval)
+                                     .toByteArray();
       return lm.append(rec);
    }
 }
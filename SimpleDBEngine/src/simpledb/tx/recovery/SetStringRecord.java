@@ -5,26 +5,38 @@ import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
 public class SetStringRecord implements LogRecord {
-   private int txnum, offset;
-   private String val;
+   private int txnum, prevLSN, offset;
+   private String oldval, newval;
    private BlockId blk;
 
    /**
-    * Create a new setint log record.
-    * @param bb the bytebuffer containing the log values
+    * Create a new setstring log record.
+    * @param in the log values, positioned after the operator
+    * @param lm the log manager, whose dictionary names the file
     */
-   public SetStringRecord(Page p) {
-      int tpos = Integer.BYTES;
-      txnum = p.getInt(tpos);
-      int fpos = tpos + Integer.BYTES;
-      String filename = p.getString(fpos);
-      int bpos = fpos + Page.maxLength(filename.length());
-      int blknum = p.getInt(bpos);
+   public SetStringRecord(RecordInput in, LogMgr lm) {
+      txnum = in.readInt();
+      prevLSN = in.readInt();
+      String filename = lm.fileName(in.readInt());
+      int blknum = in.readInt();
       blk = new BlockId(filename, blknum);
-      int opos = bpos + Integer.BYTES;
-      offset = p.getInt(opos);
-      int vpos = opos + Integer.BYTES;      
-      val = p.getString(vpos);
+      offset = in.readInt();
+      oldval = in.readString();
+      newval = in.readString();
+   }
+
+   /**
+    * Create a setstring log record from its values,
+    * as kept in the undo list of a transaction.
+    */
+   public SetStringRecord(int txnum, int prevLSN, BlockId blk, int offset,
+                          String oldval, String newval) {
+      this.txnum = txnum;
+      this.prevLSN = prevLSN;
+      this.blk = blk;
+      this.offset = offset;
+      this.oldval = oldval;
+      this.newval = newval;
    }
 
    public int op() {
@@ -35,8 +47,16 @@ public class SetStringRecord implements LogRecord {
       return txnum;
    }
 
+   public int prevLSN() {
+      return prevLSN;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
    public String toString() {
-      return "<SETSTRING " + txnum + " " + blk + " " + offset + " " + val + ">";
+      return "<SETSTRING " + txnum + " " + blk + " " + offset + " " + oldval + " " + newval + ">";
    }
 
    /**
@@ -48,33 +68,45 @@ public class SetStringRecord implements LogRecord {
     */
    public void undo(Transaction tx) {
       tx.pin(blk);
-      tx.setString(blk, offset, val, false); // don't log the undo!
+      tx.setString(blk, offset, oldval, false); // don't log the undo!
+      tx.unpin(blk);
+   }
+
+   /**
+    * Replace the specified data value with the value
+    * written by the transaction, as saved in the log record.
+    * Temporary files are deleted at startup,
+    * so their modifications are not redone.
+    * @see simpledb.tx.recovery.LogRecord#redo(Transaction)
+    */
+   public void redo(Transaction tx) {
+      if (FileMgr.isTemp(blk.fileName()))
+         return;
+      tx.pin(blk);
+      tx.setString(blk, offset, newval, false); // don't log the redo!
       tx.unpin(blk);
    }
 
    /**
     * A static method to write a setInt record to the log.
     * This log record contains the SETINT operator,
-    * followed by the transaction id, the filename, number,
+    * followed by the transaction id, the LSN of its previous
+    * record, the file id, number,
     * and offset of the modified block, and the previous
-    * integer value at that offset.
+    * and new integer values at that offset.
     * @return the LSN of the last log value
     */
-   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, String val) {
-      int tpos = Integer.BYTES;
-      int fpos = tpos + Integer.BYTES;
-      int bpos = fpos + Page.maxLength(blk.fileName().length());
-      int opos = bpos + Integer.BYTES;
-      int vpos = opos + Integer.BYTES;
-      int reclen = vpos + Page.maxLength(val.length());
-      byte[] rec = new byte[reclen];
-      Page p = new Page(rec);
-      p.setInt(0, SETSTRING);
-      p.setInt(tpos, txnum);
-      p.setString(fpos, blk.fileName());
-      p.setInt(bpos, blk.number());
-      p.setInt(opos, offset);
-      p.setString(vpos, val);
+   public static int writeToLog(LogMgr lm, int txnum, int prevLSN, BlockId blk, int offset,
+                                String oldval, String newval) {
+      byte[] rec = new RecordOutput().writeInt(SETSTRING)
+                                     .writeInt(txnum)
+                                     .writeInt(prevLSN)
+                                     .writeInt(lm.fileId(blk.fileName()))
+                                     .writeInt(blk.number())
+                                     .writeInt(offset)
+                                     .writeString(oldval)
+                                     .writeString(newval)
+                                     .toByteArray();
       return lm.append(rec);
    }
 }
\ No newline at end of file
@@ -1,6 +1,6 @@
 package simpledb.tx.recovery;
 
-import simpledb.file.Page;
+import simpledb.file.BlockId;
 import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
@@ -11,9 +11,8 @@ public class StartRecord implements LogRecord {
     * Create a log record by reading one other value from the log.
     * @param bb the bytebuffer containing the log values
     */
-   public StartRecord(Page p) {
-      int tpos = Integer.BYTES;
-      txnum = p.getInt(tpos);
+   public StartRecord(RecordInput in) {
+      txnum = in.readInt();
    }
    
    public int op() {
@@ -23,12 +22,29 @@ public class StartRecord implements LogRecord {
    public int txNumber() {
       return txnum;
    }
+
+   public int prevLSN() {
+      return 0;
+   }
+
+   /**
+    * Returns null, because the record modifies no block.
+    */
+   public BlockId block() {
+      return null;
+   }
    
    /**
     * Does nothing, because a start record
     * contains no undo information.
     */
    public void undo(Transaction tx) {}
+
+   /**
+    * Does nothing, because a start record
+    * contains no redo information.
+    */
+   public void redo(Transaction tx) {}
    
    public String toString() {
       return "<START " + txnum + ">";
@@ -41,10 +57,7 @@ public class StartRecord implements LogRecord {
     * @return the LSN of the last log value
     */
    public static int writeToLog(LogMgr lm, int txnum) {
-      byte[] rec = new byte[2*Integer.BYTES];
-      Page p = new Page(rec);
-      p.setInt(0, START);
-      p.setInt(Integer.BYTES, txnum);
+      byte[] rec = new RecordOutput().writeInt(START).writeInt(txnum).toByteArray();
       return lm.append(rec);
    }
 }
@@ -0,0 +1,69 @@
+package simpledb.tx.recovery;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.*;
+import simpledb.log.LogMgr;
+import simpledb.buffer.BufferMgr;
+
+/**
+ * The table of the active transactions of a database,
+ * which the recovery managers of its transactions share
+ * with its checkpointer.
+ * It maps each transaction that has written a START record
+ * but not yet a COMMIT or ROLLBACK record, or whose COMMIT
+ * record is not yet on disk, to the LSN from which it holds the log.
+ * A transaction registers itself and writes its START record
+ * under the read lock, so that the write lock lets a checkpoint
+ * list the active transactions and write its record atomically
+ * without serializing the transactions that start concurrently.
+ */
+public class TxTable {
+   Map<Integer,Integer> activeTxs = new ConcurrentHashMap<>();
+   ReadWriteLock startLock = new ReentrantReadWriteLock();
+
+   /**
+    * Returns the LSN of the oldest record that recovery would
+    * have to redo, if the system crashed now.
+    * That is the first record describing a modification of a buffer
+    * that has not been written since, or the START record of an active
+    * transaction, which may be about to mark a buffer as modified.
+    * The buffers that were written may not have been forced yet.
+    * @param lm the log manager
+    * @param bm the buffer manager
+    * @return the LSN of the oldest record to redo
+    */
+   public int redoPoint(LogMgr lm, BufferMgr bm) {
+      int redoLSN = lm.latestLSN() + 1;
+      for (int lsn : activeTxs.values())
+         redoLSN = Math.min(redoLSN, lsn);
+      return Math.min(redoLSN, bm.oldestDirtyLSN());
+   }
+
+   /**
+    * Write a nonquiescent checkpoint record to the log, listing the
+    * transactions that are active, and ask for it to be flushed lazily.
+    * The checkpoint does not flush any buffers.
+    * Instead, the record tells recovery where to start redoing,
+    * and recovery only needs to undo the listed transactions
+    * and the transactions that start after the checkpoint.
+    * Transactions can keep running while it is written.
+    * @param lm the log manager
+    * @param redoLSN the redo point, as returned by {@link #redoPoint}
+    *        before the modified files were forced
+    * @return the LSN of the checkpoint record
+    */
+   public int checkpoint(LogMgr lm, int redoLSN) {
+      int lsn;
+      startLock.writeLock().lock();
+      try {
+         lsn = NQCheckpointRecord.writeToLog(lm, new ArrayList<>(activeTxs.keySet()),
+                                             redoLSN);
+      }
+      finally {
+         startLock.writeLock().unlock();
+      }
+      lm.flushLazily(lsn);
+      return lsn;
+   }
+}